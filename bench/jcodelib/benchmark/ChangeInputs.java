@@ -0,0 +1,40 @@
+package jcodelib.benchmark;
+
+import java.io.File;
+import java.util.Objects;
+
+public class ChangeInputs {
+
+	public static final String SMALL = "small";
+	public static final String MEDIUM = "medium";
+	public static final String HUGE = "huge";
+
+	//Override with -Djcodelib.changes=<dir> when not running from the project root.
+	private static final File changesDir = new File(System.getProperty("jcodelib.changes", "resources/changes"));
+
+	public static File getOldFile(String size) {
+		return getFile(size, "old");
+	}
+
+	public static File getNewFile(String size) {
+		return getFile(size, "new");
+	}
+
+	private static File getFile(String size, String side) {
+		File dir = new File(new File(changesDir, getChangeDir(size)), side);
+		return Objects.requireNonNull(dir.listFiles(f -> f.getName().endsWith(".java")))[0];
+	}
+
+	private static String getChangeDir(String size) {
+		switch(size) {
+		case SMALL:
+			return "change016";	//RandomScoreFunctionBuilder, ~140 lines
+		case MEDIUM:
+			return "change375";	//WorkerInfo, ~1k lines
+		case HUGE:
+			return "change338";	//AssignmentAction, ~17.7k lines
+		default:
+			throw new IllegalArgumentException("Unknown input size:" + size);
+		}
+	}
+}
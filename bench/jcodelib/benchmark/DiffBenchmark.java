@@ -0,0 +1,84 @@
+package jcodelib.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.gumtreediff.actions.model.Action;
+
+import jcodelib.diffutil.TreeDiff;
+import jcodelib.element.GTAction;
+import jcodelib.parser.JavaCodeVisitor;
+import jcodelib.parser.TreeBuilder;
+import jcodelib.parser.TreeNode;
+import script.model.EditScript;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DiffBenchmark {
+
+	@Param({ChangeInputs.SMALL, ChangeInputs.MEDIUM, ChangeInputs.HUGE})
+	public String size;
+
+	private File oldFile;
+	private File newFile;
+
+	@Setup
+	public void setup() {
+		oldFile = ChangeInputs.getOldFile(size);
+		newFile = ChangeInputs.getNewFile(size);
+	}
+
+	//traversePreOrder prunes both trees, so each invocation needs fresh ones.
+	@State(Scope.Thread)
+	public static class Trees {
+		TreeNode oldRoot;
+		TreeNode newRoot;
+
+		@Setup(Level.Invocation)
+		public void build(DiffBenchmark input) throws IOException {
+			oldRoot = TreeBuilder.buildTreeFromFile(input.oldFile);
+			newRoot = TreeBuilder.buildTreeFromFile(input.newFile);
+		}
+	}
+
+	@Benchmark
+	public List<Action> diffGumTree() throws Exception {
+		return TreeDiff.diffGumTree(oldFile, newFile);
+	}
+
+	@Benchmark
+	public List<GTAction> diffGumTreeWithGrouping() throws Exception {
+		return TreeDiff.diffGumTreeWithGrouping(oldFile, newFile);
+	}
+
+	@Benchmark
+	public EditScript diffLAS() {
+		return TreeDiff.diffLAS(oldFile, newFile);
+	}
+
+	@Benchmark
+	public JavaCodeVisitor traversePreOrder(Trees trees) {
+		JavaCodeVisitor visitor = new JavaCodeVisitor(trees.oldRoot);
+		visitor.traversePreOrder(trees.newRoot);
+		return visitor;
+	}
+}
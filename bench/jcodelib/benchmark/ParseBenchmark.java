@@ -0,0 +1,51 @@
+package jcodelib.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import file.FileIOManager;
+import jcodelib.parser.TreeBuilder;
+import jcodelib.parser.TreeNode;
+import jcodelib.util.CodeUtils;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+	@Param({ChangeInputs.SMALL, ChangeInputs.MEDIUM, ChangeInputs.HUGE})
+	public String size;
+
+	private String source;
+
+	@Setup
+	public void setup() throws IOException {
+		source = FileIOManager.getContent(ChangeInputs.getOldFile(size));
+	}
+
+	@Benchmark
+	public CompilationUnit getCompilationUnit() {
+		return CodeUtils.getCompilationUnit(source);
+	}
+
+	@Benchmark
+	public TreeNode buildTreeFromSource() throws IOException {
+		return TreeBuilder.buildTreeFromSource(source);
+	}
+}
@@ -0,0 +1,200 @@
+package jcodelib.compiler;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFileReader;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFormatException;
+
+/*
+ * Index of the class files on a class path, built once by listing jars and directories: package -> type -> root.
+ * Lookups of missing types and packages are answered from the index without touching the file system,
+ * and parsed ClassFileReaders are kept in a bounded LRU cache.
+ * Thread-safe, one index can back the name environments of any number of compiles.
+ */
+public class ClassPathIndex implements Closeable {
+
+	public static final int DEFAULT_CACHE_SIZE = 4096;
+
+	//Package name (dotted) -> simple type name (with $ for member types) -> index of the root holding it.
+	private Map<String, Map<String, Integer>> packages = new HashMap<>();
+	private List<Path> roots = new ArrayList<>();
+	private List<FileSystem> jars = new ArrayList<>();
+	private Map<String, ClassFileReader> readers;
+
+	//Indexes the JDK classes followed by the given class path, the order a class loader would search them.
+	public ClassPathIndex(String[] classPath) throws IOException {
+		this(classPath, true, DEFAULT_CACHE_SIZE);
+	}
+
+	public ClassPathIndex(String[] classPath, boolean includeJdk, int cacheSize) throws IOException {
+		this.readers = new LinkedHashMap<String, ClassFileReader>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, ClassFileReader> eldest) {
+				return size() > cacheSize;
+			}
+		};
+		try {
+			if(includeJdk)
+				addJdk();
+			for(String entry : classPath) {
+				addEntry(Paths.get(entry));
+			}
+		} catch (IOException | RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	private void addJdk() throws IOException {
+		String bootClassPath = System.getProperty("sun.boot.class.path");
+		if(bootClassPath != null) {
+			for(String entry : bootClassPath.split(File.pathSeparator)) {
+				addEntry(Paths.get(entry));
+			}
+			return;
+		}
+		FileSystem jrt;
+		try {
+			jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+		} catch (FileSystemNotFoundException e) {
+			return;
+		}
+		try (DirectoryStream<Path> modules = Files.newDirectoryStream(jrt.getPath("/modules"))) {
+			for(Path module : modules) {
+				addRoot(module);
+			}
+		}
+	}
+
+	private void addEntry(Path entry) throws IOException {
+		if(Files.isDirectory(entry)) {
+			addRoot(entry);
+		} else if(Files.isRegularFile(entry)) {
+			FileSystem jar = FileSystems.newFileSystem(entry, (ClassLoader) null);
+			jars.add(jar);
+			for(Path root : jar.getRootDirectories()) {
+				addRoot(root);
+			}
+		}
+	}
+
+	private void addRoot(Path root) throws IOException {
+		int rootIndex = roots.size();
+		roots.add(root);
+		try (Stream<Path> files = Files.walk(root)) {
+			files.forEach(file -> {
+				String name = file.getFileName() == null ? "" : file.getFileName().toString();
+				if(!name.endsWith(".class") || name.equals("module-info.class"))
+					return;
+				String packageName = getPackageName(root.relativize(file.getParent()));
+				String typeName = name.substring(0, name.length() - ".class".length());
+				//Earlier roots win, as on a class path.
+				addPackage(packageName).putIfAbsent(typeName, rootIndex);
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private Map<String, Integer> addPackage(String packageName) {
+		Map<String, Integer> types = packages.get(packageName);
+		if(types == null) {
+			types = new HashMap<>();
+			packages.put(packageName, types);
+			int dot = packageName.lastIndexOf('.');
+			if(dot > 0)
+				addPackage(packageName.substring(0, dot));
+		}
+		return types;
+	}
+
+	private static String getPackageName(Path relative) {
+		StringBuilder sb = new StringBuilder();
+		for(Path part : relative) {
+			String name = part.toString();
+			if(name.isEmpty())
+				continue;
+			if(sb.length() > 0)
+				sb.append('.');
+			sb.append(name);
+		}
+		return sb.toString();
+	}
+
+	public boolean isPackage(String packageName) {
+		return packages.containsKey(packageName);
+	}
+
+	public boolean hasType(String packageName, String typeName) {
+		Map<String, Integer> types = packages.get(packageName);
+		return types != null && types.containsKey(typeName);
+	}
+
+	public int getTypeCount() {
+		int count = 0;
+		for(Map<String, Integer> types : packages.values()) {
+			count += types.size();
+		}
+		return count;
+	}
+
+	//Parsed class file of the type, null if it is not on the class path.
+	public ClassFileReader getReader(String packageName, String typeName) {
+		Map<String, Integer> types = packages.get(packageName);
+		Integer rootIndex = types == null ? null : types.get(typeName);
+		if(rootIndex == null)
+			return null;
+
+		String fullName = packageName.isEmpty() ? typeName : packageName + "." + typeName;
+		synchronized (readers) {
+			ClassFileReader reader = readers.get(fullName);
+			if(reader != null)
+				return reader;
+		}
+		Path root = roots.get(rootIndex);
+		Path file = root.resolve(fullName.replace('.', '/') + ".class");
+		try {
+			ClassFileReader reader = new ClassFileReader(Files.readAllBytes(file), fullName.toCharArray(), true);
+			synchronized (readers) {
+				readers.put(fullName, reader);
+			}
+			return reader;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} catch (ClassFormatException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		IOException error = null;
+		for(FileSystem jar : jars) {
+			try {
+				jar.close();
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+		jars.clear();
+		if(error != null)
+			throw error;
+	}
+}
@@ -1,5 +1,6 @@
 package jcodelib.compiler;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -7,17 +8,29 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 
+import org.eclipse.jdt.core.ToolFactory;
 import org.eclipse.jdt.core.compiler.CharOperation;
 import org.eclipse.jdt.core.compiler.CompilationProgress;
 import org.eclipse.jdt.core.compiler.IProblem;
+import org.eclipse.jdt.core.compiler.IScanner;
+import org.eclipse.jdt.core.compiler.ITerminalSymbols;
+import org.eclipse.jdt.core.compiler.InvalidInputException;
 import org.eclipse.jdt.core.dom.CompilationUnit;
 import org.eclipse.jdt.internal.compiler.ClassFile;
 import org.eclipse.jdt.internal.compiler.DefaultErrorHandlingPolicies;
 import org.eclipse.jdt.internal.compiler.env.ICompilationUnit;
+import org.eclipse.jdt.internal.compiler.env.INameEnvironment;
 import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
 import org.eclipse.jdt.internal.compiler.problem.DefaultProblemFactory;
 
@@ -25,11 +38,20 @@ public class Compiler {
 
 	public List<ClassFile> classes;
 	public List<IProblem> problems;
+	public Map<String, List<IProblem>> unitProblems;
 	public String className;
+	private ClassPathIndex index;
 
 	public Compiler(){
 		this.problems = new ArrayList<IProblem>();
 		this.classes = new ArrayList<ClassFile>();
+		this.unitProblems = new LinkedHashMap<String, List<IProblem>>();
+	}
+
+	//Resolves types through the given index, which can be shared by many compilers, instead of a class loader.
+	public Compiler(ClassPathIndex index){
+		this();
+		this.index = index;
 	}
 
 	public boolean compile(String source, CompilationUnit unit, String path, boolean writeDown, String version) throws IOException, FileNotFoundException{
@@ -45,6 +67,106 @@ public class Compiler {
 
 		this.className = CharOperation.toString(cu.getPackageName()) + "." + new String(cu.getMainTypeName());
 
+		INameEnvironment environment = index != null ?
+				new NameEnvironmentImpl(index, newUnit) : new NameEnvironmentImpl(loader, newUnit);
+		CompilerRequestorImpl requestor = compile(environment, new ICompilationUnit[]{ newUnit }, version);
+
+		this.classes = requestor.getClasses();
+		this.problems = requestor.getProblems();
+		this.unitProblems = requestor.getUnitProblems();
+
+		boolean error = hasError(problems);
+
+		if (writeDown) {
+			for (ClassFile cf : classes) {
+				String filePath	= CharOperation.charToString(cf.fileName());
+				String pakagePath = path + filePath.substring(0, filePath.lastIndexOf("/")+1);
+				File pakageDir = new File(pakagePath);
+				if(!pakageDir.exists()){
+					pakageDir.mkdirs();
+				}
+				File f = new File(path + filePath + ".class");
+				f.createNewFile();
+				FileOutputStream fos = new FileOutputStream(f);
+				fos.write(cf.getBytes());
+				fos.flush();
+				fos.close();
+			}
+		}
+
+		return error;
+	}
+
+	//Writes the class files of the last compile into one jar instead of a file per class.
+	public void writeJar(File jarFile) throws IOException {
+		try (JarOutputStream jos = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(jarFile)))) {
+			for (ClassFile cf : classes) {
+				jos.putNextEntry(new JarEntry(CharOperation.charToString(cf.fileName()) + ".class"));
+				jos.write(cf.getBytes());
+				jos.closeEntry();
+			}
+		}
+	}
+
+	/*
+	 * Compiles all units of a project, given as file name -> source, in one compiler invocation per thread.
+	 * With more than one thread, packages are grouped by their imports and independent groups are compiled
+	 * in parallel. If any group fails, e.g. because of a fully qualified reference across groups, everything is
+	 * compiled again in a single invocation so the reported problems are those of a whole-project compile.
+	 * Class files and problems of all units are available in classes, problems and unitProblems afterwards.
+	 */
+	public boolean compileAll(ClassLoader loader, Map<String, String> sources, String version, int threads) throws InterruptedException {
+		List<ICompilationUnit> units = new ArrayList<ICompilationUnit>(sources.size());
+		List<char[]> contents = new ArrayList<char[]>(sources.size());
+		for (Map.Entry<String, String> source : sources.entrySet()) {
+			char[] content = source.getValue().toCharArray();
+			contents.add(content);
+			units.add(new org.eclipse.jdt.internal.compiler.batch.CompilationUnit(content, source.getKey(), "UTF8"));
+		}
+
+		List<CompilerRequestorImpl> results = new ArrayList<CompilerRequestorImpl>();
+		List<List<ICompilationUnit>> buckets = threads > 1 ? groupUnits(units, contents, version, threads) : null;
+		if (buckets != null && buckets.size() > 1) {
+			ExecutorService executor = Executors.newFixedThreadPool(buckets.size());
+			try {
+				List<Future<CompilerRequestorImpl>> futures = new ArrayList<Future<CompilerRequestorImpl>>();
+				for (List<ICompilationUnit> bucket : buckets) {
+					futures.add(executor.submit(() -> compile(getEnvironment(loader),
+							bucket.toArray(new ICompilationUnit[bucket.size()]), version)));
+				}
+				for (Future<CompilerRequestorImpl> future : futures) {
+					CompilerRequestorImpl requestor = future.get();
+					results.add(requestor);
+					if (hasError(requestor.getProblems())) {
+						results.clear();
+						break;
+					}
+				}
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+		if (results.isEmpty())
+			results.add(compile(getEnvironment(loader), units.toArray(new ICompilationUnit[units.size()]), version));
+
+		this.classes = new ArrayList<ClassFile>();
+		this.problems = new ArrayList<IProblem>();
+		this.unitProblems = new LinkedHashMap<String, List<IProblem>>();
+		for (CompilerRequestorImpl requestor : results) {
+			classes.addAll(requestor.getClasses());
+			problems.addAll(requestor.getProblems());
+			unitProblems.putAll(requestor.getUnitProblems());
+		}
+		return hasError(problems);
+	}
+
+	private INameEnvironment getEnvironment(ClassLoader loader) {
+		return index != null ? new NameEnvironmentImpl(index) : new NameEnvironmentImpl(loader);
+	}
+
+	private static CompilerRequestorImpl compile(INameEnvironment environment, ICompilationUnit[] units, String version) {
 		CompilationProgress progress = null;
 		CompilerRequestorImpl requestor = new CompilerRequestorImpl();
 		CompilerOptions options = new CompilerOptions();
@@ -56,39 +178,139 @@ public class Compiler {
 		options.set(optionsMap);
 
 		org.eclipse.jdt.internal.compiler.Compiler compiler =
-				new org.eclipse.jdt.internal.compiler.Compiler(new NameEnvironmentImpl(loader, newUnit),
+				new org.eclipse.jdt.internal.compiler.Compiler(environment,
 						DefaultErrorHandlingPolicies.proceedWithAllProblems(),
 						options,requestor,new DefaultProblemFactory(Locale.getDefault()),
 						null, progress);
-		compiler.compile(new ICompilationUnit[]{ newUnit });
-
-		this.classes = requestor.getClasses();
-		this.problems = requestor.getProblems();
+		compiler.compile(units);
+		return requestor;
+	}
 
-		boolean error = false;
+	private static boolean hasError(List<IProblem> problems) {
 		for (Iterator<IProblem> it = problems.iterator(); it.hasNext();) {
 			IProblem problem = it.next();
 			if(problem.isError())
-				error = true;
+				return true;
 		}
+		return false;
+	}
 
-		if (writeDown) {
-			for (ClassFile cf : classes) {
-				String filePath	= CharOperation.charToString(cf.fileName());
-				String pakagePath = path + filePath.substring(0, filePath.lastIndexOf("/")+1);
-				File pakageDir = new File(pakagePath);
-				if(!pakageDir.exists()){
-					pakageDir.mkdirs();
+	/*
+	 * Splits the units into at most the given number of buckets, keeping packages that import each other
+	 * in the same bucket. Groups are placed largest first into the least loaded bucket.
+	 */
+	private static List<List<ICompilationUnit>> groupUnits(List<ICompilationUnit> units, List<char[]> contents, String version, int threads) {
+		List<String> unitPackages = new ArrayList<String>(units.size());
+		List<List<String>> unitImports = new ArrayList<List<String>>(units.size());
+		Map<String, String> parents = new HashMap<String, String>();
+		for (char[] content : contents) {
+			List<String> imports = new ArrayList<String>();
+			String packageName = scanHeader(content, imports, version);
+			unitPackages.add(packageName);
+			unitImports.add(imports);
+			parents.put(packageName, packageName);
+		}
+		for (int i = 0; i < units.size(); i++) {
+			for (String name : unitImports.get(i)) {
+				//The longest prefix of the import that is a package of the project.
+				String prefix = name.endsWith(".*") ? name.substring(0, name.length() - 2) : name;
+				while (prefix != null && !parents.containsKey(prefix)) {
+					int dot = prefix.lastIndexOf('.');
+					prefix = dot > 0 ? prefix.substring(0, dot) : null;
 				}
-				File f = new File(path + filePath + ".class");
-				f.createNewFile();
-				FileOutputStream fos = new FileOutputStream(f);
-				fos.write(cf.getBytes());
-				fos.flush();
-				fos.close();
+				if (prefix != null)
+					union(parents, unitPackages.get(i), prefix);
 			}
 		}
 
-		return error;
+		Map<String, List<Integer>> groups = new HashMap<String, List<Integer>>();
+		for (int i = 0; i < units.size(); i++) {
+			groups.computeIfAbsent(find(parents, unitPackages.get(i)), k -> new ArrayList<Integer>()).add(i);
+		}
+		List<List<Integer>> sorted = new ArrayList<List<Integer>>(groups.values());
+		sorted.sort((a, b) -> Long.compare(getSize(b, contents), getSize(a, contents)));
+
+		int count = Math.min(threads, sorted.size());
+		List<List<ICompilationUnit>> buckets = new ArrayList<List<ICompilationUnit>>(count);
+		long[] loads = new long[count];
+		for (int i = 0; i < count; i++) {
+			buckets.add(new ArrayList<ICompilationUnit>());
+		}
+		for (List<Integer> group : sorted) {
+			int bucket = 0;
+			for (int i = 1; i < count; i++) {
+				if (loads[i] < loads[bucket])
+					bucket = i;
+			}
+			loads[bucket] += getSize(group, contents);
+			for (int unit : group) {
+				buckets.get(bucket).add(units.get(unit));
+			}
+		}
+		return buckets;
+	}
+
+	private static long getSize(List<Integer> group, List<char[]> contents) {
+		long size = 0;
+		for (int unit : group) {
+			size += contents.get(unit).length;
+		}
+		return size;
+	}
+
+	private static String find(Map<String, String> parents, String packageName) {
+		String root = packageName;
+		while (!parents.get(root).equals(root)) {
+			root = parents.get(root);
+		}
+		parents.put(packageName, root);
+		return root;
+	}
+
+	private static void union(Map<String, String> parents, String a, String b) {
+		String rootA = find(parents, a);
+		String rootB = find(parents, b);
+		if (!rootA.equals(rootB))
+			parents.put(rootA, rootB);
+	}
+
+	//Package name of the source, "" for the default package, and the names in its import declarations.
+	private static String scanHeader(char[] source, List<String> imports, String version) {
+		IScanner scanner = ToolFactory.createScanner(false, false, false, version, version);
+		scanner.setSource(source);
+		String packageName = "";
+		try {
+			while (true) {
+				int token = scanner.getNextToken();
+				if (token == ITerminalSymbols.TokenNamepackage) {
+					packageName = readName(scanner);
+				} else if (token == ITerminalSymbols.TokenNameimport) {
+					imports.add(readName(scanner));
+				} else if (token == ITerminalSymbols.TokenNameclass || token == ITerminalSymbols.TokenNameinterface
+						|| token == ITerminalSymbols.TokenNameenum || token == ITerminalSymbols.TokenNameLBRACE
+						|| token == ITerminalSymbols.TokenNameEOF) {
+					break;
+				}
+			}
+		} catch (InvalidInputException e) {
+			//Keep what was read so far, the compiler reports the problem.
+		}
+		return packageName;
+	}
+
+	private static String readName(IScanner scanner) throws InvalidInputException {
+		StringBuilder sb = new StringBuilder();
+		while (true) {
+			int token = scanner.getNextToken();
+			if (token == ITerminalSymbols.TokenNameIdentifier) {
+				sb.append(scanner.getCurrentTokenSource());
+			} else if (token == ITerminalSymbols.TokenNameDOT) {
+				sb.append('.');
+			} else if (token == ITerminalSymbols.TokenNameMULTIPLY) {
+				sb.append('*');
+			} else if (token != ITerminalSymbols.TokenNamestatic) {
+				return sb.toString();
+			}
+		}
 	}
 }
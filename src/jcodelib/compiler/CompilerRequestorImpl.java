@@ -1,7 +1,9 @@
 package jcodelib.compiler;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.jdt.core.compiler.IProblem;
 import org.eclipse.jdt.internal.compiler.ClassFile;
@@ -12,10 +14,12 @@ public class CompilerRequestorImpl implements ICompilerRequestor {
 
 	private List<IProblem> problems;
 	private List<ClassFile> classes;
+	private Map<String, List<IProblem>> unitProblems;
 	
 	public CompilerRequestorImpl(){
 		this.problems = new ArrayList<IProblem>();
 		this.classes = new ArrayList<ClassFile>();
+		this.unitProblems = new LinkedHashMap<String, List<IProblem>>();
 	}
 	
 	public void acceptResult(CompilationResult result) {
@@ -23,11 +27,14 @@ public class CompilerRequestorImpl implements ICompilerRequestor {
 		boolean errors = false;
 		if (result.hasProblems()) {
 			IProblem[] problems = result.getProblems();
+			List<IProblem> fileProblems = new ArrayList<IProblem>(problems.length);
+			this.unitProblems.put(new String(result.getFileName()), fileProblems);
 			for (int i = 0; i < problems.length; i++) {
 				if (problems[i].isError()) 
 					errors = true;
 				
 				this.problems.add(problems[i]);
+				fileProblems.add(problems[i]);
 			}
 		}
 		if (!errors) {
@@ -44,4 +51,9 @@ public class CompilerRequestorImpl implements ICompilerRequestor {
 	public List<ClassFile> getClasses(){
 		return classes;
 	}
+
+	//Problems by file name of the unit that has them.
+	public Map<String, List<IProblem>> getUnitProblems(){
+		return unitProblems;
+	}
 }
@@ -1,21 +1,42 @@
 package jcodelib.compiler;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.jdt.core.compiler.CharOperation;
 import org.eclipse.jdt.internal.compiler.ClassFile;
 
+import jcodelib.coverage.CoverageRuntime;
+
+/*
+ * Defines compiled classes straight from their bytes, falling back to the given URLs.
+ * Classes are only defined when first loaded. The loader is parallel capable: loads of different classes
+ * do not block each other, and the per-name lock of loadClass keeps a class from being defined twice.
+ * With a CoverageRuntime, classes are instrumented when defined while classMap keeps the original bytes.
+ */
 public class CustomClassLoader extends URLClassLoader {
+
+	static {
+		registerAsParallelCapable();
+	}
 	
 	public Map<String, byte[]> classMap;
+	private CoverageRuntime coverage;
 	
 	public CustomClassLoader(URL[] urls, ClassLoader parent, List<ClassFile> classesList) {
-		super(urls);
-		this.classMap = new HashMap<String, byte[]>();
+		this(urls, parent, classesList, null);
+	}
+
+	public CustomClassLoader(URL[] urls, ClassLoader parent, List<ClassFile> classesList, CoverageRuntime coverage) {
+		super(urls, parent);
+		this.coverage = coverage;
+		this.classMap = new ConcurrentHashMap<String, byte[]>();
 		for (int i = 0; i < classesList.size(); i++) {
 			ClassFile classFile = classesList.get(i);
 			String className = CharOperation.toString(classFile.getCompoundName());
@@ -24,21 +45,39 @@ public class CustomClassLoader extends URLClassLoader {
 	}
 	
 	public CustomClassLoader(ClassLoader parent, List<ClassFile> classesList) {
-		super(new URL[] { });
-		this.classMap = new HashMap<String, byte[]>();
-		for (int i = 0; i < classesList.size(); i++) {
-			ClassFile classFile = classesList.get(i);
-			String className = CharOperation.toString(classFile.getCompoundName());
-			this.classMap.put(className,classFile.getBytes());
-		}
+		this(new URL[] { }, parent, classesList);
 	}
 	
 	public Class findClass(String name) throws ClassNotFoundException {
 		byte[] bytes = (byte[]) this.classMap.get(name);
 		if (bytes != null){
+			if (coverage != null) {
+				try {
+					bytes = coverage.instrument(name, bytes);
+				} catch (IOException e) {
+					throw new ClassNotFoundException(name, e);
+				}
+			}
 			return defineClass(name, bytes, 0, bytes.length);
 		}else{
 			return super.findClass(name);
 		}
     }
+
+	//Serves the bytes of compiled classes as resources, for tools that read class files through the loader.
+	@Override
+	public InputStream getResourceAsStream(String name) {
+		if (name.endsWith(".class")) {
+			byte[] bytes = this.classMap.get(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+			if (bytes != null)
+				return new ByteArrayInputStream(bytes);
+		}
+		return super.getResourceAsStream(name);
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.classMap.clear();
+		super.close();
+	}
 }
@@ -17,6 +17,9 @@ public class NameEnvironmentImpl implements INameEnvironment {
 	private ICompilationUnit cu;
 	private String fullName;
 	private ClassLoader loader = null;
+	private ClassPathIndex index = null;
+	private String packageName;
+	private String typeName;
 	
 	public NameEnvironmentImpl(CompilationUnit cu){
 		this.cu = cu;
@@ -31,13 +34,37 @@ public class NameEnvironmentImpl implements INameEnvironment {
 		this.loader = loader;
 	}
 
+	//Only answers binary types, for compiles where every source unit is passed to the compiler.
+	public NameEnvironmentImpl(ClassLoader loader){
+		this.loader = loader;
+	}
+
+	public NameEnvironmentImpl(ClassPathIndex index){
+		this.index = index;
+	}
+
+	//Resolves types through a shared index instead of a class loader.
+	public NameEnvironmentImpl(ClassPathIndex index, ICompilationUnit cu){
+		this.cu = cu;
+		this.packageName = CharOperation.toString(cu.getPackageName());
+		this.typeName = new String(cu.getMainTypeName());
+		this.fullName = packageName.isEmpty() ? typeName : packageName + "." + typeName;
+		this.index = index;
+	}
+
 	public NameEnvironmentAnswer findType(char[][] compoundTypeName) {
 		// TODO Auto-generated method stub
+		if (index != null) {
+			char[][] packageName = CharOperation.subarray(compoundTypeName, 0, compoundTypeName.length - 1);
+			return findType(CharOperation.toString(packageName), new String(compoundTypeName[compoundTypeName.length - 1]));
+		}
 		return findType(CharOperation.toString(compoundTypeName));
 	}
 
 	public NameEnvironmentAnswer findType(char[] typeName, char[][] packageName) {
 		// TODO Auto-generated method stub
+		if (index != null && typeName != null)
+			return findType(CharOperation.toString(packageName), new String(typeName));
 		String fullName = CharOperation.toString(packageName);
 		if (typeName != null) {
 			if (fullName.length() > 0)
@@ -57,6 +84,14 @@ public class NameEnvironmentImpl implements INameEnvironment {
 			
 			fullName += new String(packageName); 
 		}
+		if (index != null) {
+			//A name is a package unless a type has it, answered from the index without loading anything.
+			if ((cu != null && this.fullName.equals(fullName))
+					|| (packageName != null && index.hasType(CharOperation.toString(parentPackageName), new String(packageName))))
+				return false;
+			return index.isPackage(fullName) || (cu != null && (this.packageName.equals(fullName)
+					|| this.packageName.startsWith(fullName + ".")));
+		}
 		if (findType(fullName) != null)
 			return false;		
 				
@@ -77,8 +112,15 @@ public class NameEnvironmentImpl implements INameEnvironment {
 
 	}
 	
+	private NameEnvironmentAnswer findType(String packageName, String typeName) {
+		if (cu != null && this.packageName.equals(packageName) && this.typeName.equals(typeName))
+			return new NameEnvironmentAnswer(cu, null);
+		ClassFileReader reader = index.getReader(packageName, typeName);
+		return reader == null ? null : new NameEnvironmentAnswer(reader, null);
+	}
+
 	private NameEnvironmentAnswer findType(String fullName) {
-		if (this.fullName.equals(fullName))
+		if (cu != null && this.fullName.equals(fullName))
 			return new NameEnvironmentAnswer(cu, null);
 		
 		try {
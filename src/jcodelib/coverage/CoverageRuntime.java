@@ -0,0 +1,67 @@
+package jcodelib.coverage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jacoco.core.analysis.Analyzer;
+import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.core.instr.Instrumenter;
+import org.jacoco.core.runtime.IRuntime;
+import org.jacoco.core.runtime.LoggerRuntime;
+import org.jacoco.core.runtime.RuntimeData;
+
+/*
+ * In-process coverage without the JaCoCo agent: classes are instrumented before they are defined and
+ * report their probes to a runtime living in this JVM. Probes can be collected and reset between runs,
+ * so coverage of a compiled change is measured without forking a JVM or writing an .exec file.
+ */
+public class CoverageRuntime implements AutoCloseable {
+
+	private IRuntime runtime;
+	private RuntimeData data;
+	private Instrumenter instrumenter;
+
+	public CoverageRuntime() throws Exception {
+		this.runtime = new LoggerRuntime();
+		this.data = new RuntimeData();
+		this.runtime.startup(data);
+		this.instrumenter = new Instrumenter(runtime);
+	}
+
+	public byte[] instrument(String className, byte[] bytes) throws IOException {
+		return instrumenter.instrument(bytes, className);
+	}
+
+	public ExecutionDataStore collect(boolean reset) {
+		ExecutionDataStore executionData = new ExecutionDataStore();
+		data.collect(executionData, new SessionInfoStore(), reset);
+		return executionData;
+	}
+
+	//Clears the probes of all instrumented classes, e.g. before running the next test.
+	public void reset() {
+		data.reset();
+	}
+
+	//Line coverage per source file since the last reset, analyzed on the original (not instrumented) class bytes.
+	public List<LineCoverage> getCoverage(Map<String, byte[]> classes, boolean reset) throws IOException {
+		CoverageBuilder coverageBuilder = new CoverageBuilder();
+		Analyzer analyzer = new Analyzer(collect(reset), coverageBuilder);
+		for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+			analyzer.analyzeClass(entry.getValue(), entry.getKey());
+		}
+		Map<String, LineCoverage> coverage = new TreeMap<>();
+		new CoverageUtils().addCoverage(coverageBuilder, coverage);
+		return new ArrayList<>(coverage.values());
+	}
+
+	@Override
+	public void close() {
+		runtime.shutdown();
+	}
+}
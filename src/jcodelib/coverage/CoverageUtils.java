@@ -1,62 +1,138 @@
 package jcodelib.coverage;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.jacoco.core.analysis.Analyzer;
 import org.jacoco.core.analysis.CoverageBuilder;
-import org.jacoco.core.analysis.IClassCoverage;
 import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.analysis.ISourceFileCoverage;
 import org.jacoco.core.data.ExecutionDataReader;
 import org.jacoco.core.data.ExecutionDataStore;
 import org.jacoco.core.data.SessionInfoStore;
 
 public class CoverageUtils {
 
+	//Line coverage per source file of the given classes, file names are package paths like a/b/C.java.
 	public List<LineCoverage> getCoverage(String coverageFile, File classDir, List<String> classNames)  throws FileNotFoundException, IOException {
-		List<LineCoverage> coverage = new ArrayList<>();
-		ExecutionDataStore executionData = new ExecutionDataStore();
-		executionData = readExecutionData(coverageFile);
-
-		String coverageInfo = "";
+		ExecutionDataStore executionData = readExecutionData(coverageFile);
 
 		CoverageBuilder coverageBuilder = new CoverageBuilder();
 		Analyzer analyzer = new Analyzer(executionData, coverageBuilder);
 		for (String className : classNames) {
-			InputStream targetClass = getClass(classDir, className);
-			analyzer.analyzeClass(targetClass, className);
+			try (InputStream targetClass = getClass(classDir, className)) {
+				analyzer.analyzeClass(targetClass, className);
+			}
 		}
 
-		for (IClassCoverage cc : coverageBuilder.getClasses()){
-			for (int i = cc.getFirstLine(); i <= cc.getLastLine(); i++){
-				int status = cc.getLine(i).getStatus();
-				if(isCovered(status)){
-					coverageInfo += ","+i;
-				}
+		Map<String, LineCoverage> coverage = new TreeMap<>();
+		addCoverage(coverageBuilder, coverage);
+		return new ArrayList<>(coverage.values());
+	}
+
+	/*
+	 * Line coverage per source file of all classes in the given directories, merged over all sessions.
+	 * Class files are analyzed in parallel, each thread with its own Analyzer, and the results merged by file.
+	 */
+	public List<LineCoverage> getCoverage(List<String> coverageFiles, List<File> classDirs, int threads) throws IOException, InterruptedException {
+		ExecutionDataStore executionData = readExecutionData(coverageFiles);
+		List<Path> classFiles = new ArrayList<>();
+		for (File classDir : classDirs) {
+			try (Stream<Path> files = Files.walk(classDir.toPath())) {
+				classFiles.addAll(files.filter(f -> f.toString().endsWith(".class")).collect(Collectors.toList()));
 			}
 		}
-		if(coverageInfo.length() >= 1){
-			coverageInfo = coverageInfo.substring(1);
+
+		int count = Math.max(1, Math.min(threads, classFiles.size()));
+		ExecutorService executor = Executors.newFixedThreadPool(count);
+		Map<String, LineCoverage> coverage = new TreeMap<>();
+		try {
+			List<Future<Map<String, LineCoverage>>> futures = new ArrayList<>();
+			for (int i = 0; i < count; i++) {
+				int first = i;
+				futures.add(executor.submit(() -> {
+					CoverageBuilder coverageBuilder = new CoverageBuilder();
+					Analyzer analyzer = new Analyzer(executionData, coverageBuilder);
+					for (int j = first; j < classFiles.size(); j += count) {
+						Path classFile = classFiles.get(j);
+						try (InputStream in = new BufferedInputStream(Files.newInputStream(classFile))) {
+							analyzer.analyzeClass(in, classFile.toString());
+						}
+					}
+					Map<String, LineCoverage> partial = new TreeMap<>();
+					addCoverage(coverageBuilder, partial);
+					return partial;
+				}));
+			}
+			for (Future<Map<String, LineCoverage>> future : futures) {
+				for (LineCoverage lineCoverage : future.get().values()) {
+					LineCoverage merged = coverage.get(lineCoverage.fileName);
+					if (merged == null)
+						coverage.put(lineCoverage.fileName, lineCoverage);
+					else
+						merged.merge(lineCoverage);
+				}
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdown();
 		}
+		return new ArrayList<>(coverage.values());
+	}
 
-		return coverage;
+	void addCoverage(CoverageBuilder coverageBuilder, Map<String, LineCoverage> coverage) {
+		for (ISourceFileCoverage sc : coverageBuilder.getSourceFiles()){
+			String fileName = sc.getPackageName().isEmpty() ? sc.getName() : sc.getPackageName() + "/" + sc.getName();
+			LineCoverage lineCoverage = coverage.get(fileName);
+			if (lineCoverage == null) {
+				lineCoverage = new LineCoverage(fileName);
+				coverage.put(fileName, lineCoverage);
+			}
+			for (int i = sc.getFirstLine(); i <= sc.getLastLine(); i++){
+				ICounter instructions = sc.getLine(i).getInstructionCounter();
+				if (instructions.getTotalCount() > 0)
+					lineCoverage.addLine(i, isCovered(sc.getLine(i).getStatus()) ? instructions.getCoveredCount() : 0);
+			}
+		}
 	}
 
 	public ExecutionDataStore readExecutionData(String fileName) throws FileNotFoundException, IOException {
-		final FileInputStream in = new FileInputStream(new File(fileName));
+		return readExecutionData(Collections.singletonList(fileName));
+	}
+
+	//Streams every session of every file into one store, probes of the same class are merged as they are read.
+	public ExecutionDataStore readExecutionData(List<String> fileNames) throws FileNotFoundException, IOException {
 		ExecutionDataStore executionDataStore = new ExecutionDataStore();
 		SessionInfoStore sessionInfoStore = new SessionInfoStore();
-		final ExecutionDataReader reader = new ExecutionDataReader(in);
-		reader.setSessionInfoVisitor(sessionInfoStore);
-		reader.setExecutionDataVisitor(executionDataStore);
-		while(reader.read()){
+		for (String fileName : fileNames) {
+			try (InputStream in = new BufferedInputStream(new FileInputStream(new File(fileName)))) {
+				final ExecutionDataReader reader = new ExecutionDataReader(in);
+				reader.setSessionInfoVisitor(sessionInfoStore);
+				reader.setExecutionDataVisitor(executionDataStore);
+				while(reader.read()){
+				}
+			}
 		}
-		in.close();
 
 		return executionDataStore;
 	}
@@ -80,7 +156,7 @@ public class CoverageUtils {
 			FileInputStream is = new FileInputStream(resourceFile);
 			return is;
 		}else{
-			InputStream is = this.getClass().getClassLoader().getResourceAsStream(className);
+			InputStream is = this.getClass().getClassLoader().getResourceAsStream(className.replace('.', '/') + ".class");
 			return is;
 		}
 	}
@@ -1,18 +1,53 @@
 package jcodelib.coverage;
 
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.Arrays;
+import java.util.BitSet;
 
+/*
+ * Coverage of the lines of one source file, kept in primitive arrays indexed by line number.
+ * The count of a line is the number of its covered instructions, lines holds every line with code.
+ */
 public class LineCoverage {
 	public String fileName;
-	public SortedMap<Integer, Integer> coverage;
+	private int[] counts = new int[0];
+	private BitSet lines = new BitSet();
 
 	public LineCoverage(String fileName){
 		this.fileName = fileName;
-		coverage = new TreeMap<>();
 	}
 
 	public void addLine(int lineNum, int count){
-		coverage.put(lineNum, coverage.containsKey(lineNum) ? coverage.get(lineNum)+count : count);
+		if(lineNum >= counts.length)
+			counts = Arrays.copyOf(counts, Math.max(lineNum + 1, counts.length * 2));
+		counts[lineNum] += count;
+		lines.set(lineNum);
+	}
+
+	public int getCount(int lineNum){
+		return lineNum < counts.length ? counts[lineNum] : 0;
+	}
+
+	public boolean isCovered(int lineNum){
+		return getCount(lineNum) > 0;
+	}
+
+	//Lines with code, covered or not.
+	public BitSet getLines(){
+		return (BitSet) lines.clone();
+	}
+
+	public BitSet getCoveredLines(){
+		BitSet covered = new BitSet(counts.length);
+		for(int line = lines.nextSetBit(0); line >= 0; line = lines.nextSetBit(line + 1)){
+			if(counts[line] > 0)
+				covered.set(line);
+		}
+		return covered;
+	}
+
+	public void merge(LineCoverage other){
+		for(int line = other.lines.nextSetBit(0); line >= 0; line = other.lines.nextSetBit(line + 1)){
+			addLine(line, other.counts[line]);
+		}
 	}
 }
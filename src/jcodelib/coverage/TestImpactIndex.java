@@ -0,0 +1,291 @@
+package jcodelib.coverage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import jcodelib.element.Hunk;
+import jcodelib.element.LineSlices;
+import jcodelib.element.UnifiedHunk;
+
+/*
+ * Maps (file, line) to the set of tests covering it, each set a bitmap of test ids, to select the tests to
+ * rerun for a diff. Files are keyed by the package path of LineCoverage, diff paths are matched by suffix.
+ * When a commit moves code, update remaps line numbers through its hunks instead of collecting coverage again.
+ * Not thread-safe.
+ */
+public class TestImpactIndex {
+
+	private static final int MAGIC = 0x54494958;
+
+	private List<String> testNames = new ArrayList<>();
+	private Map<String, Integer> testIds = new HashMap<>();
+	//File name -> tests per line, indexed by line number, null for lines no test covers.
+	private Map<String, BitSet[]> files = new HashMap<>();
+
+	public int getTestId(String testName) {
+		Integer id = testIds.get(testName);
+		if(id == null){
+			id = testNames.size();
+			testNames.add(testName);
+			testIds.put(testName, id);
+		}
+		return id;
+	}
+
+	public List<String> getTestNames(BitSet tests) {
+		List<String> names = new ArrayList<>(tests.cardinality());
+		for(int id = tests.nextSetBit(0); id >= 0; id = tests.nextSetBit(id + 1)){
+			names.add(testNames.get(id));
+		}
+		return names;
+	}
+
+	//Records the lines covered by one test run.
+	public void addCoverage(String testName, List<LineCoverage> coverage) {
+		int id = getTestId(testName);
+		for(LineCoverage lineCoverage : coverage){
+			BitSet covered = lineCoverage.getCoveredLines();
+			if(covered.isEmpty())
+				continue;
+			BitSet[] lines = files.get(lineCoverage.fileName);
+			if(lines == null || lines.length < covered.length())
+				lines = lines == null ? new BitSet[covered.length()] : Arrays.copyOf(lines, covered.length());
+			files.put(lineCoverage.fileName, lines);
+			for(int line = covered.nextSetBit(0); line >= 0; line = covered.nextSetBit(line + 1)){
+				if(lines[line] == null)
+					lines[line] = new BitSet();
+				lines[line].set(id);
+			}
+		}
+	}
+
+	//Tests covering the old lines touched by the hunks of a normal diff of the given file.
+	public BitSet getImpactedTests(String fileName, List<Hunk> hunks) {
+		BitSet tests = new BitSet();
+		BitSet[] lines = getLines(fileName);
+		if(lines == null)
+			return tests;
+		for(Hunk hunk : hunks){
+			if("a".equals(hunk.type)){
+				//Code inserted between two lines impacts the tests running either of them.
+				addTests(tests, lines, hunk.startLine, hunk.startLine + 1);
+			}else{
+				addTests(tests, lines, hunk.startLine, hunk.endLine);
+			}
+		}
+		return tests;
+	}
+
+	//Tests covering the old lines touched by the hunks of a unified diff, for any files it spans.
+	public BitSet getImpactedTests(List<UnifiedHunk> hunks) {
+		BitSet tests = new BitSet();
+		for(UnifiedHunk hunk : hunks){
+			BitSet[] lines = hunk.oldFileName == null ? null : getLines(hunk.oldFileName);
+			if(lines == null)
+				continue;
+			if(hunk.oldLength == 0){
+				//Insertions without context, oldLineNum is the line they follow.
+				addTests(tests, lines, hunk.oldLineNum, hunk.oldLineNum + 1);
+				continue;
+			}
+			addTests(tests, lines, hunk);
+		}
+		return tests;
+	}
+
+	/*
+	 * Walks the hunk as git lays it out, deletions before additions at the same place, to add the tests of every
+	 * deleted line and of the old lines before and after every run of added lines.
+	 */
+	private static void addTests(BitSet tests, BitSet[] lines, UnifiedHunk hunk) {
+		LineSlices deleted = hunk.deletedLines;
+		LineSlices added = hunk.addedLines;
+		int oldLine = hunk.oldLineNum;
+		int newLine = hunk.newLineNum;
+		int oldEnd = hunk.oldLineNum + hunk.oldLength;
+		int newEnd = hunk.newLineNum + hunk.newLength;
+		int d = 0;
+		int a = 0;
+		boolean inAdded = false;
+		while(oldLine < oldEnd || newLine < newEnd){
+			if(d < deleted.size() && deleted.getLineNum(d) == oldLine){
+				addTests(tests, lines, oldLine, oldLine);
+				oldLine++;
+				d++;
+				inAdded = false;
+			}else if(a < added.size() && added.getLineNum(a) == newLine){
+				if(!inAdded)
+					addTests(tests, lines, oldLine - 1, oldLine);
+				newLine++;
+				a++;
+				inAdded = true;
+			}else{
+				oldLine++;
+				newLine++;
+				inAdded = false;
+			}
+		}
+	}
+
+	private static void addTests(BitSet tests, BitSet[] lines, int from, int to) {
+		for(int line = Math.max(from, 0); line <= to && line < lines.length; line++){
+			if(lines[line] != null)
+				tests.or(lines[line]);
+		}
+	}
+
+	/*
+	 * Moves the coverage of a file across a commit given the hunks of its normal diff.
+	 * Unchanged lines keep their tests at their new line numbers, deleted lines are dropped, and changed or
+	 * inserted lines get the union of the tests of the old lines they replace or sit between.
+	 */
+	public void update(String fileName, List<Hunk> hunks) {
+		String key = getKey(fileName);
+		if(key == null)
+			return;
+		BitSet[] oldLines = files.get(key);
+		List<Hunk> sorted = new ArrayList<>(hunks);
+		sorted.sort(Comparator.comparingInt(h -> h.startLine));
+
+		int newLength = oldLines.length;
+		for(Hunk hunk : sorted){
+			newLength = Math.max(newLength, oldLines.length + getDelta(hunk) + 1);
+			newLength = Math.max(newLength, hunk.newEndLine + 1);
+		}
+		BitSet[] newLines = new BitSet[newLength];
+		int next = 1;
+		int delta = 0;
+		for(Hunk hunk : sorted){
+			copy(oldLines, next, "a".equals(hunk.type) ? hunk.startLine : hunk.startLine - 1, delta, newLines);
+			if(!"d".equals(hunk.type)){
+				BitSet tests = new BitSet();
+				if("a".equals(hunk.type))
+					addTests(tests, oldLines, hunk.startLine, hunk.startLine + 1);
+				else
+					addTests(tests, oldLines, hunk.startLine, hunk.endLine);
+				if(!tests.isEmpty()){
+					for(int line = hunk.newStartLine; line <= hunk.newEndLine; line++){
+						newLines[line] = (BitSet) tests.clone();
+					}
+				}
+			}
+			next = ("a".equals(hunk.type) ? hunk.startLine : hunk.endLine) + 1;
+			delta = getDelta(hunk);
+		}
+		copy(oldLines, next, oldLines.length - 1, delta, newLines);
+
+		int length = newLines.length;
+		while(length > 0 && newLines[length - 1] == null)
+			length--;
+		files.put(key, Arrays.copyOf(newLines, length));
+	}
+
+	//Offset from old to new line numbers after the hunk.
+	private static int getDelta(Hunk hunk) {
+		switch(hunk.type){
+		case "a":
+			return hunk.newEndLine - hunk.startLine;
+		case "d":
+			return hunk.newStartLine - hunk.endLine;
+		default:
+			return hunk.newEndLine - hunk.endLine;
+		}
+	}
+
+	private static void copy(BitSet[] oldLines, int from, int to, int delta, BitSet[] newLines) {
+		for(int line = from; line <= to && line < oldLines.length; line++){
+			if(oldLines[line] != null && line + delta >= 0)
+				newLines[line + delta] = oldLines[line];
+		}
+	}
+
+	private BitSet[] getLines(String fileName) {
+		String key = getKey(fileName);
+		return key == null ? null : files.get(key);
+	}
+
+	//The indexed file name that is the longest suffix of the path, e.g. a/src/p/A.java -> p/A.java.
+	private String getKey(String fileName) {
+		String path = fileName.replace('\\', '/');
+		while(true){
+			if(files.containsKey(path))
+				return path;
+			int slash = path.indexOf('/');
+			if(slash < 0)
+				return null;
+			path = path.substring(slash + 1);
+		}
+	}
+
+	//Stores the index gzipped, each line's test set as the words of its bitmap.
+	public void save(File file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new GZIPOutputStream(new FileOutputStream(file))))) {
+			out.writeInt(MAGIC);
+			out.writeInt(testNames.size());
+			for(String testName : testNames){
+				out.writeUTF(testName);
+			}
+			out.writeInt(files.size());
+			for(Map.Entry<String, BitSet[]> entry : files.entrySet()){
+				out.writeUTF(entry.getKey());
+				BitSet[] lines = entry.getValue();
+				out.writeInt(lines.length);
+				for(int line = 0; line < lines.length; line++){
+					if(lines[line] == null || lines[line].isEmpty())
+						continue;
+					long[] words = lines[line].toLongArray();
+					out.writeInt(line);
+					out.writeInt(words.length);
+					for(long word : words){
+						out.writeLong(word);
+					}
+				}
+				out.writeInt(-1);
+			}
+		}
+	}
+
+	public static TestImpactIndex load(File file) throws IOException {
+		TestImpactIndex index = new TestImpactIndex();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new GZIPInputStream(new FileInputStream(file))))) {
+			if(in.readInt() != MAGIC)
+				throw new IOException("Not a test impact index: " + file);
+			int testCount = in.readInt();
+			for(int i = 0; i < testCount; i++){
+				index.getTestId(in.readUTF());
+			}
+			int fileCount = in.readInt();
+			for(int i = 0; i < fileCount; i++){
+				String fileName = in.readUTF();
+				BitSet[] lines = new BitSet[in.readInt()];
+				int line;
+				while((line = in.readInt()) >= 0){
+					long[] words = new long[in.readInt()];
+					for(int w = 0; w < words.length; w++){
+						words[w] = in.readLong();
+					}
+					lines[line] = BitSet.valueOf(words);
+				}
+				index.files.put(fileName, lines);
+			}
+		}
+		return index;
+	}
+}
@@ -0,0 +1,165 @@
+package jcodelib.diffutil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import com.github.gumtreediff.actions.model.Action;
+import com.github.gumtreediff.tree.ITree;
+
+import jcodelib.element.GTAction;
+import jcodelib.util.LineIndex;
+
+/*
+ * Groups GumTree actions into GTAction trees in linear time.
+ * Actions are indexed by (node id, action type); lookups return the first unconsumed action in list order,
+ * which is the action the former scans of the remaining action list found.
+ */
+public class ActionGrouper {
+
+	private static final String[] TYPES = {"INS", "DEL", "UPD", "MOV", ""};
+
+	private List<Action> actions;
+	private LineIndex srcLines;
+	private LineIndex dstLines;
+	private int[] types;
+	private int[] next;
+	private IntIntMap[] heads;
+	private BitSet consumed;
+
+	public ActionGrouper(List<Action> actions, LineIndex srcLines, LineIndex dstLines) {
+		this.actions = actions;
+		this.srcLines = srcLines;
+		this.dstLines = dstLines;
+		int size = actions.size();
+		this.types = new int[size];
+		this.next = new int[size];
+		this.heads = new IntIntMap[TYPES.length];
+		for(int t = 0; t < TYPES.length; t++) {
+			heads[t] = new IntIntMap(size);
+		}
+		this.consumed = new BitSet(size);
+		//Chain actions on the same node and type in list order.
+		for(int i = size - 1; i >= 0; i--) {
+			Action action = actions.get(i);
+			types[i] = getTypeCode(GTAction.getActionType(action));
+			int id = action.getNode().getId();
+			next[i] = heads[types[i]].get(id);
+			heads[types[i]].put(id, i);
+		}
+	}
+
+	public static List<GTAction> group(List<Action> actions, LineIndex srcLines, LineIndex dstLines) {
+		return new ActionGrouper(actions, srcLines, dstLines).group();
+	}
+
+	public List<GTAction> group() {
+		List<GTAction> gtActions = new ArrayList<>();
+		int first = consumed.nextClearBit(0);
+		while(first < actions.size()) {
+			gtActions.add(attachActions(first));
+			first = consumed.nextClearBit(first);
+		}
+		return gtActions;
+	}
+
+	private GTAction attachActions(int index) {
+		int type = types[index];
+
+		//Bottom-up search to find a root action.
+		int root = index;
+		ITree parentNode = actions.get(root).getNode().getParent();
+		while(parentNode != null) {
+			int parent = find(parentNode.getId(), type);
+			if(parent < 0)
+				break;
+			root = parent;
+			parentNode = actions.get(root).getNode().getParent();
+		}
+
+		//Top-down search for children, each target is visited once.
+		GTAction rootAction = new GTAction(actions.get(root), srcLines, dstLines);
+		consumed.set(root);
+		List<GTAction> targets = new ArrayList<>();
+		targets.add(rootAction);
+		for(int t = 0; t < targets.size(); t++) {
+			GTAction target = targets.get(t);
+			for(ITree child : target.action.getNode().getChildren()) {
+				int childIndex = find(child.getId(), type);
+				if(childIndex >= 0) {
+					GTAction gta = new GTAction(actions.get(childIndex), srcLines, dstLines);
+					consumed.set(childIndex);
+					target.children.add(gta);
+					targets.add(gta);
+				}
+			}
+		}
+
+		return rootAction;
+	}
+
+	private int find(int id, int type) {
+		int head = heads[type].get(id);
+		int i = head;
+		while(i >= 0 && consumed.get(i)) {
+			i = next[i];
+		}
+		if(i != head)
+			heads[type].put(id, i);
+		return i;
+	}
+
+	private static int getTypeCode(String actionType) {
+		for(int t = 0; t < TYPES.length - 1; t++) {
+			if(TYPES[t].equals(actionType))
+				return t;
+		}
+		return TYPES.length - 1;
+	}
+
+	//Open addressing map from node id to the first action index, -1 if absent.
+	private static class IntIntMap {
+		private int[] keys;
+		private int[] values;
+		private boolean[] used;
+		private int mask;
+
+		IntIntMap(int expected) {
+			int capacity = 2;
+			while(capacity < expected * 2) {
+				capacity <<= 1;
+			}
+			keys = new int[capacity];
+			values = new int[capacity];
+			used = new boolean[capacity];
+			mask = capacity - 1;
+			Arrays.fill(values, -1);
+		}
+
+		int get(int key) {
+			int slot = slot(key);
+			while(used[slot]) {
+				if(keys[slot] == key)
+					return values[slot];
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		void put(int key, int value) {
+			int slot = slot(key);
+			while(used[slot] && keys[slot] != key) {
+				slot = (slot + 1) & mask;
+			}
+			used[slot] = true;
+			keys[slot] = key;
+			values[slot] = value;
+		}
+
+		private int slot(int key) {
+			int h = key * 0x9E3779B9;
+			return (h ^ (h >>> 16)) & mask;
+		}
+	}
+}
@@ -0,0 +1,243 @@
+package jcodelib.diffutil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+
+import file.FileIOManager;
+import jcodelib.element.CDChange;
+import jcodelib.element.GTAction;
+import jcodelib.parser.JavaCodeVisitor;
+import jcodelib.parser.TreeBuilder;
+import jcodelib.parser.TreeNode;
+import script.model.EditOp;
+import script.model.EditScript;
+
+public class BatchDiff {
+
+	public static final String GUMTREE = "gumtree";
+	public static final String LAS = "las";
+	public static final String JCODE = "jcode";
+	public static final List<String> ALL_ENGINES = Arrays.asList(GUMTREE, LAS, JCODE);
+
+	private int parallelism;
+	private List<String> engines;
+	private DiffSession session;
+	private DiffCache cache;
+
+	public BatchDiff(int parallelism, List<String> engines) {
+		this.parallelism = parallelism;
+		this.engines = engines;
+		this.session = DiffSession.getDefault();
+	}
+
+	public void setCache(DiffCache cache) {
+		this.cache = cache;
+	}
+
+	public DiffCache getCache() {
+		return cache;
+	}
+
+	public static List<DiffPair> getChangePairs(File changesDir) {
+		List<DiffPair> pairs = new ArrayList<>();
+		File[] changeDirs = changesDir.listFiles(File::isDirectory);
+		if(changeDirs == null)
+			return pairs;
+		Arrays.sort(changeDirs);
+		for(File changeDir : changeDirs) {
+			File[] oldFiles = new File(changeDir, "old").listFiles(f -> f.getName().endsWith(".java"));
+			File[] newFiles = new File(changeDir, "new").listFiles(f -> f.getName().endsWith(".java"));
+			if(oldFiles != null && newFiles != null && oldFiles.length > 0 && newFiles.length > 0)
+				pairs.add(new DiffPair(changeDir.getName(), oldFiles[0], newFiles[0]));
+		}
+		return pairs;
+	}
+
+	public BatchStats run(List<DiffPair> pairs, File outputFile) throws IOException, InterruptedException {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		CompletionService<PairResult> service = new ExecutorCompletionService<>(pool);
+		long start = System.nanoTime();
+		for(DiffPair pair : pairs) {
+			service.submit(() -> diff(pair));
+		}
+
+		//Write each result as soon as it is done.
+		long[] latencies = new long[pairs.size()];
+		int failures = 0;
+		PrintWriter pw = FileIOManager.getPrintWriter(outputFile);
+		try {
+			for(int i = 0; i < pairs.size(); i++) {
+				PairResult result = service.take().get();
+				latencies[i] = result.nanos;
+				if(result.error != null)
+					failures++;
+				write(pw, result);
+			}
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		} finally {
+			pw.close();
+			pool.shutdownNow();
+		}
+
+		return new BatchStats(latencies, failures, System.nanoTime() - start);
+	}
+
+	private PairResult diff(DiffPair pair) {
+		PairResult result = new PairResult(pair);
+		long start = System.nanoTime();
+		try {
+			byte[] src = cache == null ? null : Files.readAllBytes(pair.srcFile.toPath());
+			byte[] dst = cache == null ? null : Files.readAllBytes(pair.dstFile.toPath());
+			for(String engine : engines) {
+				if(cache == null) {
+					result.outputs.put(engine, diff(session, engine, pair.srcFile, pair.dstFile));
+				} else {
+					String key = DiffCache.getKey(engine, getEngineVersion(engine), src, dst);
+					result.outputs.put(engine, cache.computeIfAbsent(key, () -> diff(session, engine, pair.srcFile, pair.dstFile)));
+				}
+			}
+		} catch (Throwable e) {
+			//Errors such as StackOverflowError on a deep AST only fail this pair.
+			result.error = e;
+		}
+		result.nanos = System.nanoTime() - start;
+		return result;
+	}
+
+	public static List<String> diff(DiffSession session, String engine, File srcFile, File dstFile) throws Exception {
+		List<String> lines = new ArrayList<>();
+		switch(engine) {
+		case GUMTREE:
+			for(GTAction action : session.diffWithGrouping(srcFile, dstFile))
+				lines.add(action.toString());
+			break;
+		case LAS:
+			EditScript script = TreeDiff.diffLAS(srcFile, dstFile);
+			if(script != null) {
+				for(EditOp op : script.getEditOps())
+					lines.add(op.toString());
+			}
+			break;
+		case JCODE:
+			TreeNode oldRoot = TreeBuilder.buildTreeFromFile(srcFile);
+			TreeNode newRoot = TreeBuilder.buildTreeFromFile(dstFile);
+			JavaCodeVisitor visitor = new JavaCodeVisitor(oldRoot);
+			visitor.traversePreOrder(newRoot);
+			for(CDChange change : visitor.getResults().keySet())
+				lines.add(change.toString());
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown engine:" + engine);
+		}
+		return lines;
+	}
+
+	//Bump when an engine or its output format changes, so cached results are not reused.
+	public static String getEngineVersion(String engine) {
+		switch(engine) {
+		case GUMTREE:
+			return "gumtree-2.0.0/1";
+		case LAS:
+			return "las/1";
+		case JCODE:
+			return "jcode/3";
+		default:
+			throw new IllegalArgumentException("Unknown engine:" + engine);
+		}
+	}
+
+	private void write(PrintWriter pw, PairResult result) {
+		pw.print(result.pair.name);
+		pw.print("\t");
+		pw.print(result.nanos / 1000000.0);
+		pw.print("ms");
+		if(result.error != null) {
+			pw.print("\tERROR\t");
+			pw.print(result.error);
+		}
+		pw.println();
+		for(Map.Entry<String, List<String>> output : result.outputs.entrySet()) {
+			pw.print("#");
+			pw.print(output.getKey());
+			pw.print("\t");
+			pw.println(output.getValue().size());
+			for(String line : output.getValue())
+				pw.println(line);
+		}
+		pw.flush();
+	}
+
+	public static class DiffPair {
+		public String name;
+		public File srcFile;
+		public File dstFile;
+
+		public DiffPair(String name, File srcFile, File dstFile) {
+			this.name = name;
+			this.srcFile = srcFile;
+			this.dstFile = dstFile;
+		}
+	}
+
+	private static class PairResult {
+		DiffPair pair;
+		Map<String, List<String>> outputs = new LinkedHashMap<>();
+		Throwable error;
+		long nanos;
+
+		PairResult(DiffPair pair) {
+			this.pair = pair;
+		}
+	}
+
+	public static class BatchStats {
+		public int pairs;
+		public int failures;
+		public double seconds;
+		public double p50;
+		public double p90;
+		public double p99;
+		public double max;
+
+		public BatchStats(long[] latencies, int failures, long elapsedNanos) {
+			long[] sorted = latencies.clone();
+			Arrays.sort(sorted);
+			this.pairs = sorted.length;
+			this.failures = failures;
+			this.seconds = elapsedNanos / 1e9;
+			this.p50 = percentile(sorted, 50);
+			this.p90 = percentile(sorted, 90);
+			this.p99 = percentile(sorted, 99);
+			this.max = sorted.length > 0 ? sorted[sorted.length - 1] / 1e6 : 0;
+		}
+
+		private static double percentile(long[] sorted, int p) {
+			if(sorted.length == 0)
+				return 0;
+			int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+			return sorted[Math.max(rank - 1, 0)] / 1e6;
+		}
+
+		public double throughput() {
+			return seconds > 0 ? pairs / seconds : 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d pairs (%d failed) in %.2fs, %.2f pairs/s, latency ms p50=%.2f p90=%.2f p99=%.2f max=%.2f",
+					pairs, failures, seconds, throughput(), p50, p90, p99, max);
+		}
+	}
+}
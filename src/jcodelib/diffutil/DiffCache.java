@@ -0,0 +1,260 @@
+package jcodelib.diffutil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Content-addressed store of diff outputs on local disk.
+ * An entry is keyed by SHA-1 of the engine name, engine version and both sources, so renamed or copied pairs hit
+ * the same entry and a changed engine never sees stale results. Large entries are read through memory-mapped files and
+ * the least recently used ones are evicted once the store exceeds its size bound. Safe to share between threads.
+ */
+public class DiffCache {
+
+	private static final int MAGIC = 0x4a434443; // "JCDC"
+	private static final String EXT = ".bin";
+	private static final int MAP_THRESHOLD = 1 << 20;
+
+	private File dir;
+	private long maxBytes;
+	private long totalBytes;
+	//Entry name -> size, in access order.
+	private LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long hits;
+	private long misses;
+
+	public DiffCache(File dir, long maxBytes) throws IOException {
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+		if(!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Cannot create cache directory:" + dir.getAbsolutePath());
+		load();
+	}
+
+	//Rebuild the LRU order from modification times, which are refreshed on every hit.
+	private void load() {
+		File[] subDirs = dir.listFiles(File::isDirectory);
+		if(subDirs == null)
+			return;
+		List<File> files = new ArrayList<>();
+		for(File subDir : subDirs) {
+			File[] entryFiles = subDir.listFiles(f -> f.getName().endsWith(EXT));
+			if(entryFiles != null)
+				files.addAll(Arrays.asList(entryFiles));
+		}
+		files.sort(Comparator.comparingLong(File::lastModified));
+		for(File file : files) {
+			String name = file.getParentFile().getName() + file.getName().substring(0, file.getName().length() - EXT.length());
+			entries.put(name, file.length());
+			totalBytes += file.length();
+		}
+		evict();
+	}
+
+	public static String getKey(String engine, String version, byte[] src, byte[] dst) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			update(md, engine.getBytes(StandardCharsets.UTF_8));
+			update(md, version.getBytes(StandardCharsets.UTF_8));
+			update(md, src);
+			update(md, dst);
+			StringBuilder sb = new StringBuilder();
+			for(byte b : md.digest()) {
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+				sb.append(Character.forDigit(b & 0xf, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	//Length-prefixed, so the boundaries between the parts are part of the key.
+	private static void update(MessageDigest md, byte[] bytes) {
+		int length = bytes.length;
+		md.update(new byte[]{(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+		md.update(bytes);
+	}
+
+	public List<String> get(String key) {
+		synchronized (this) {
+			if(entries.get(key) == null) {
+				misses++;
+				return null;
+			}
+		}
+		File file = getFile(key);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			List<String> lines = read(readBuffer(channel));
+			file.setLastModified(System.currentTimeMillis());
+			synchronized (this) {
+				hits++;
+			}
+			return lines;
+		} catch (IOException e) {
+			//Removed by another process or corrupted, treat as a miss.
+			synchronized (this) {
+				misses++;
+			}
+			remove(key);
+			return null;
+		}
+	}
+
+	//Small entries are copied to the heap, only large ones are mapped, so most files are never held by a mapping.
+	private static ByteBuffer readBuffer(FileChannel channel) throws IOException {
+		long size = channel.size();
+		if(size > MAP_THRESHOLD)
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		ByteBuffer buffer = ByteBuffer.allocate((int) size);
+		while(buffer.hasRemaining()) {
+			if(channel.read(buffer) < 0)
+				throw new IOException("Truncated cache entry");
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	public void put(String key, List<String> lines) throws IOException {
+		byte[] bytes = write(lines);
+		File file = getFile(key);
+		File parent = file.getParentFile();
+		if(!parent.isDirectory() && !parent.mkdirs())
+			throw new IOException("Cannot create cache directory:" + parent.getAbsolutePath());
+		//Write to a temporary file first, so readers never see a partial entry.
+		File tmp = File.createTempFile(key, ".tmp", parent);
+		Files.write(tmp.toPath(), bytes);
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		synchronized (this) {
+			Long old = entries.put(key, (long) bytes.length);
+			totalBytes += bytes.length - (old == null ? 0 : old);
+			evict();
+		}
+	}
+
+	public List<String> computeIfAbsent(String key, Loader loader) throws Exception {
+		List<String> lines = get(key);
+		if(lines == null) {
+			lines = loader.load();
+			put(key, lines);
+		}
+		return lines;
+	}
+
+	//Forgets the entry only once its file is gone, so totalBytes keeps counting files that could not be deleted.
+	private synchronized void remove(String key) {
+		if(!delete(key))
+			return;
+		Long size = entries.remove(key);
+		if(size != null)
+			totalBytes -= size;
+	}
+
+	private synchronized void evict() {
+		Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+		while(totalBytes > maxBytes && it.hasNext()) {
+			Map.Entry<String, Long> eldest = it.next();
+			//Still open elsewhere, e.g. mapped on Windows, try the next one.
+			if(!delete(eldest.getKey()))
+				continue;
+			totalBytes -= eldest.getValue();
+			it.remove();
+		}
+	}
+
+	private boolean delete(String key) {
+		try {
+			Files.deleteIfExists(getFile(key).toPath());
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private File getFile(String key) {
+		//Fan out over 256 sub directories, as git does for loose objects.
+		return new File(new File(dir, key.substring(0, 2)), key.substring(2) + EXT);
+	}
+
+	//Layout: magic, line count, then a varint byte length and the UTF-8 bytes of each line.
+	static byte[] write(List<String> lines) {
+		List<byte[]> encoded = new ArrayList<>(lines.size());
+		int size = 8;
+		for(String line : lines) {
+			byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+			encoded.add(bytes);
+			size += 5 + bytes.length;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.putInt(MAGIC);
+		buffer.putInt(lines.size());
+		for(byte[] bytes : encoded) {
+			int length = bytes.length;
+			while((length & ~0x7f) != 0) {
+				buffer.put((byte) ((length & 0x7f) | 0x80));
+				length >>>= 7;
+			}
+			buffer.put((byte) length);
+			buffer.put(bytes);
+		}
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
+	static List<String> read(ByteBuffer buffer) throws IOException {
+		if(buffer.remaining() < 8 || buffer.getInt() != MAGIC)
+			throw new IOException("Not a cache entry");
+		int count = buffer.getInt();
+		List<String> lines = new ArrayList<>(count);
+		byte[] bytes = new byte[64];
+		try {
+			for(int i = 0; i < count; i++) {
+				int length = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = buffer.get();
+					length |= (b & 0x7f) << shift;
+					shift += 7;
+				} while((b & 0x80) != 0);
+				if(bytes.length < length)
+					bytes = new byte[Math.max(length, bytes.length * 2)];
+				buffer.get(bytes, 0, length);
+				lines.add(new String(bytes, 0, length, StandardCharsets.UTF_8));
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("Truncated cache entry", e);
+		}
+		return lines;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getSize() {
+		return totalBytes;
+	}
+
+	public interface Loader {
+		List<String> load() throws Exception;
+	}
+}
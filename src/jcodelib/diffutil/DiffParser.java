@@ -1,11 +1,16 @@
 package jcodelib.diffutil;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import jcodelib.element.Hunk;
+import jcodelib.element.LineSlices;
 import jcodelib.element.UnifiedHunk;
 
 public class DiffParser {
@@ -18,18 +23,40 @@ public class DiffParser {
 
 	public static List<Hunk> parseDiff(String diff){
 		List<Hunk> hunks = new ArrayList<Hunk>();
-		String[] lines = diff.split("\n");
-		Matcher m = null;
+		try {
+			parseDiff(diff, hunks::add);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return hunks;
+	}
+
+	public static void parseDiff(CharSequence diff, HunkHandler<Hunk> handler) throws IOException {
+		parseDiff(new DiffLines(diff), handler);
+	}
+
+	//Streams hunks from a reader, keeping only the lines of the current hunk in memory.
+	public static void parseDiff(Reader reader, HunkHandler<Hunk> handler) throws IOException {
+		parseDiff(new DiffLines(reader), handler);
+	}
+
+	private static void parseDiff(DiffLines lines, HunkHandler<Hunk> handler) throws IOException {
+		Matcher m = diffHunkInfo.matcher("");
 		Hunk hunk = null;
 		String type;
 		int startLine = 0;
 		int endLine = 0;
 		int newStartLine = 0;
 		int newEndLine = 0;
-		StringBuffer sb = null;
 
-		for(int index=0; index<lines.length; index++){
-			m = diffHunkInfo.matcher(lines[index]);
+		while(true){
+			lines.release();
+			if(!lines.next())
+				break;
+			//Headers start with a line number.
+			if(lines.length() == 0 || !Character.isDigit(lines.charAt(0)))
+				continue;
+			m.reset(lines.line());
 			if(m.find()){
 				//Parse header.
 				type = m.group(3);
@@ -39,53 +66,68 @@ public class DiffParser {
 				newEndLine = m.group(5) == null ? newStartLine : Integer.parseInt(m.group(5).substring(1));
 				hunk = new Hunk(type, startLine, endLine, newStartLine, newEndLine);
 				//Iterate deleted lines.
+				boolean complete = true;
 				if(type.equals("c") || type.equals("d")){
-					sb = new StringBuffer();
-					for(int i=startLine; i<=endLine; i++){
-						index++;
-						sb.append(lines[index].substring(2));	//remove "< "
-						sb.append("\n");
+					for(int i=startLine; i<=endLine && (complete = lines.next()); i++){
+						addContent(hunk.deletedLines, i, lines);	//remove "< "
 					}
-					hunk.deletedCode = sb.toString();
 				}
 				if(type.equals("c")){
 					//skip ---
-					index++;
+					complete = complete && lines.next();
 				}
 				if(type.equals("c") || type.equals("a")){
-					sb = new StringBuffer();
-					for(int i=newStartLine; i<=newEndLine; i++){
-						index++;
-						sb.append(lines[index].substring(2));	//remove "> "
-						sb.append("\n");
+					for(int i=newStartLine; i<=newEndLine && (complete = complete && lines.next()); i++){
+						addContent(hunk.addedLines, i, lines);	//remove "> "
 					}
-					hunk.addedCode = sb.toString();
 				}
+				CharSequence text = lines.share();
+				hunk.deletedLines.setText(text);
+				hunk.addedLines.setText(text);
 				//Check whether it is valid change.
-				if(checkHunk(hunk)){
-					hunks.add(hunk);
+				if(complete && checkHunk(hunk)){
+					handler.handle(hunk);
 				}
 			}
 		}
+	}
 
-		return hunks;
+	private static void addContent(LineSlices slices, int lineNum, DiffLines lines) {
+		slices.add(lineNum, Math.min(lines.start() + 2, lines.end()), lines.end());
 	}
 
-	private static boolean checkHunk(Hunk hunk) {
+	static boolean checkHunk(Hunk hunk) {
 		if(hunk.type.equals("d")){
-			return hunk.deletedCode.trim().length() > 0;
+			return !hunk.deletedLines.isBlank();
 		}else if(hunk.type.equals("a")){
-			return hunk.addedCode.trim().length() > 0;
+			return !hunk.addedLines.isBlank();
 		}else if(hunk.type.equals("c")){
-			return (hunk.addedCode.trim().length() > 0)
-					|| (hunk.deletedCode.trim().length() > 0);
+			return !hunk.addedLines.isBlank()
+					|| !hunk.deletedLines.isBlank();
 		}
 		return false;
 	}
 
 	public static List<UnifiedHunk> parseUnitifedDiff(String diff){
 		List<UnifiedHunk> hunks = new ArrayList<>();
-		String[] lines = diff.split("\\n");
+		try {
+			parseUnifiedDiff(diff, hunks::add);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return hunks;
+	}
+
+	public static void parseUnifiedDiff(CharSequence diff, HunkHandler<UnifiedHunk> handler) throws IOException {
+		parseUnifiedDiff(new DiffLines(diff), handler);
+	}
+
+	//Streams hunks from a reader, e.g. the output of git log -p, keeping only the lines of the current hunk in memory.
+	public static void parseUnifiedDiff(Reader reader, HunkHandler<UnifiedHunk> handler) throws IOException {
+		parseUnifiedDiff(new DiffLines(reader), handler);
+	}
+
+	private static void parseUnifiedDiff(DiffLines lines, HunkHandler<UnifiedHunk> handler) throws IOException {
 		int addedLineNum = 0;
 		int deletedLineNum = 0;
 		int addedLineCount = 0;
@@ -96,34 +138,53 @@ public class DiffParser {
 		boolean isJava = false;
 		UnifiedHunk hunk = null;
 
-		for(String line : lines){
+		while(true){
+			//A hunk is complete once parsing stops, no more lines are added to it.
+			if(!parse){
+				if(hunk != null)
+					emit(hunk, lines.share(), handler);
+				hunk = null;
+				lines.release();
+			}
+			if(!lines.next())
+				break;
+			char first = lines.length() == 0 ? 0 : lines.charAt(0);
+			if(parse && first != '+' && first != '-' && first != ' ' && first != '\\' && first != 0){
+				//Shorter than its header says, e.g. a truncated diff, the line belongs to what follows.
+				parse = false;
+			}
 			if(parse){
-				if(line.startsWith("+")){
-					hunk.addedLines.put(addedLineNum, line.substring(1).trim());
+				//Counts cover context lines too, as the lengths in the hunk header do.
+				if(first == '+'){
+					addTrimmed(hunk.addedLines, addedLineNum, lines);
 					addedLineNum++;
 					addedLineCount++;
-				}else if(line.startsWith("-")){
-					hunk.deletedLines.put(deletedLineNum, line.substring(1).trim());
+				}else if(first == '-'){
+					addTrimmed(hunk.deletedLines, deletedLineNum, lines);
 					deletedLineNum++;
 					deletedLineCount++;
-				}else{
+				}else if(first != '\\'){
 					addedLineNum++;
 					deletedLineNum++;
+					addedLineCount++;
+					deletedLineCount++;
 				}
-				if(addedLineCount == hunk.newLength &&
-						deletedLineCount == hunk.oldLength){
+				if(addedLineCount >= hunk.newLength &&
+						deletedLineCount >= hunk.oldLength){
 					parse = false;
 				}
+				//Lines of a hunk are never headers, even a deleted line starting with "--".
+				continue;
 			}
 
-			if(line.startsWith("---")){
-				oldFileName = getFileName(line);
+			if(first == '-' && lines.startsWith("---")){
+				oldFileName = getFileName(lines.line().toString());
 				parse = false;
 				addedLineNum = 0;
 				deletedLineNum = 0;
 			}
-			if(line.startsWith("+++")){
-				newFileName = getFileName(line);
+			if(first == '+' && lines.startsWith("+++")){
+				newFileName = getFileName(lines.line().toString());
 				//Ignore non-java files.
 				if ((oldFileName != null
 						&& !oldFileName.endsWith(".java"))
@@ -134,21 +195,41 @@ public class DiffParser {
 					isJava = true;
 				}
 			}
-			if(line.startsWith("@@")){
+			if(first == '@' && lines.startsWith("@@")){
 				if(isJava){
 					if(hunk != null)
-						hunks.add(hunk);
+						emit(hunk, lines.share(), handler);
 					parse = true;
-					hunk = parseHunkInfo(line);
+					hunk = parseHunkInfo(lines.line().toString());
 					hunk.oldFileName = oldFileName;
 					hunk.newFileName = newFileName;
 					addedLineNum = hunk.newLineNum;
 					deletedLineNum = hunk.oldLineNum;
+					addedLineCount = 0;
+					deletedLineCount = 0;
 				}
 			}
 		}
+		if(hunk != null)
+			emit(hunk, lines.share(), handler);
+	}
 
-		return hunks;
+	private static void emit(UnifiedHunk hunk, CharSequence text, HunkHandler<UnifiedHunk> handler) throws IOException {
+		hunk.addedLines.setText(text);
+		hunk.deletedLines.setText(text);
+		handler.handle(hunk);
+	}
+
+	//Line content without the leading +/- and surrounding whitespace, as String.trim() would give.
+	private static void addTrimmed(LineSlices slices, int lineNum, DiffLines lines) {
+		int start = lines.start() + 1;
+		int end = lines.end();
+		CharSequence text = lines.text();
+		while(start < end && text.charAt(start) <= ' ')
+			start++;
+		while(end > start && text.charAt(end - 1) <= ' ')
+			end--;
+		slices.add(lineNum, start, end);
 	}
 
 	public static UnifiedHunk parseHunkInfo(String line) {
@@ -206,4 +287,174 @@ public class DiffParser {
 		}
 		return fileName;
 	}
+
+	public interface HunkHandler<T> {
+		void handle(T hunk) throws IOException;
+	}
+
+	/*
+	 * Lines of a diff as [start, end) offsets into text(), without line feeds.
+	 * Over a CharSequence the offsets point into the original text. Over a Reader, lines are appended to a buffer
+	 * that is cleared by release(); a buffer handed out by share() is never overwritten, a new one is used instead.
+	 */
+	private static class DiffLines {
+		private CharSequence text;
+		private int pos;
+		private Reader reader;
+		private char[] buffer;
+		private int length;
+		private boolean shared;
+		private char[] input;
+		private int inputPos;
+		private int inputLength;
+		private int start;
+		private int end;
+		private Slice line = new Slice();
+
+		DiffLines(CharSequence text) {
+			this.text = text;
+		}
+
+		DiffLines(Reader reader) {
+			this.reader = reader;
+			this.buffer = new char[1024];
+			this.input = new char[8192];
+			this.text = CharBuffer.wrap(buffer);
+		}
+
+		boolean next() throws IOException {
+			if(reader == null){
+				if(pos >= text.length())
+					return false;
+				start = pos;
+				while(pos < text.length() && text.charAt(pos) != '\n')
+					pos++;
+				end = pos;
+				pos++;
+				return true;
+			}
+			start = length;
+			boolean read = false;
+			while(true){
+				if(inputPos == inputLength){
+					inputLength = reader.read(input, 0, input.length);
+					inputPos = 0;
+					if(inputLength <= 0){
+						inputLength = 0;
+						break;
+					}
+				}
+				read = true;
+				int lineEnd = inputPos;
+				while(lineEnd < inputLength && input[lineEnd] != '\n')
+					lineEnd++;
+				append(inputPos, lineEnd);
+				if(lineEnd < inputLength){
+					inputPos = lineEnd + 1;
+					end = length;
+					return true;
+				}
+				inputPos = inputLength;
+			}
+			end = length;
+			return read;
+		}
+
+		private void append(int from, int to) {
+			int count = to - from;
+			if(length + count > buffer.length){
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + count));
+				text = CharBuffer.wrap(buffer);
+				shared = false;
+			}
+			System.arraycopy(input, from, buffer, length, count);
+			length += count;
+		}
+
+		//Drop the lines read so far.
+		void release() {
+			if(reader == null)
+				return;
+			if(shared){
+				buffer = new char[1024];
+				text = CharBuffer.wrap(buffer);
+				shared = false;
+			}
+			length = 0;
+		}
+
+		//The text the offsets of the lines read so far refer to.
+		CharSequence share() {
+			shared = true;
+			return text;
+		}
+
+		CharSequence text() {
+			return text;
+		}
+
+		int start() {
+			return start;
+		}
+
+		int end() {
+			return end;
+		}
+
+		int length() {
+			return end - start;
+		}
+
+		char charAt(int index) {
+			return text.charAt(start + index);
+		}
+
+		boolean startsWith(String prefix) {
+			if(length() < prefix.length())
+				return false;
+			for(int i = 0; i < prefix.length(); i++){
+				if(charAt(i) != prefix.charAt(i))
+					return false;
+			}
+			return true;
+		}
+
+		CharSequence line() {
+			line.set(text, start, end);
+			return line;
+		}
+	}
+
+	//View of a range of a CharSequence.
+	private static class Slice implements CharSequence {
+		private CharSequence text;
+		private int start;
+		private int end;
+
+		void set(CharSequence text, int start, int end) {
+			this.text = text;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return text.charAt(start + index);
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return text.subSequence(start + from, start + to);
+		}
+
+		@Override
+		public String toString() {
+			return text.subSequence(start, end).toString();
+		}
+	}
 }
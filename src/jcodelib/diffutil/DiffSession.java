@@ -0,0 +1,131 @@
+package jcodelib.diffutil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+import com.github.gumtreediff.actions.ActionGenerator;
+import com.github.gumtreediff.actions.model.Action;
+import com.github.gumtreediff.gen.Generators;
+import com.github.gumtreediff.gen.Registry;
+import com.github.gumtreediff.gen.TreeGenerator;
+import com.github.gumtreediff.gen.jdt.JdtVisitor;
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.matchers.Matcher;
+import com.github.gumtreediff.matchers.Matchers;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+
+import file.FileIOManager;
+import jcodelib.element.GTAction;
+import jcodelib.parser.ParseService;
+import jcodelib.util.LineIndex;
+
+/*
+ * Reusable GumTree setup for high-volume diffing.
+ * Generators are registered once per JVM and generator/matcher factories are resolved once per session,
+ * so diff() only pays for parsing, matching and action generation. Sessions are safe to share between threads.
+ */
+public class DiffSession {
+
+	private static boolean initialized = false;
+	private static DiffSession defaultSession;
+
+	private final Registry.Factory<? extends Matcher> matcherFactory;
+	private final Map<String, Registry.Factory<? extends TreeGenerator>> generatorFactories = new ConcurrentHashMap<>();
+
+	public DiffSession() {
+		this(null);
+	}
+
+	public DiffSession(String matcherId) {
+		initGenerators();
+		this.matcherFactory = matcherId == null ? null : Matchers.getInstance().getFactory(matcherId);
+		if(matcherId != null && matcherFactory == null)
+			throw new IllegalArgumentException("Unknown matcher:" + matcherId);
+	}
+
+	public static synchronized void initGenerators() {
+		if(!initialized) {
+			com.github.gumtreediff.client.Run.initGenerators();
+			initialized = true;
+		}
+	}
+
+	public static synchronized DiffSession getDefault() {
+		if(defaultSession == null)
+			defaultSession = new DiffSession();
+		return defaultSession;
+	}
+
+	public List<Action> diff(File srcFile, File dstFile) throws IOException {
+		ITree src = getTree(srcFile).getRoot();
+		ITree dst = getTree(dstFile).getRoot();
+		return diff(src, dst);
+	}
+
+	public List<Action> diff(ITree src, ITree dst) {
+		Matcher m = getMatcher(src, dst);
+		m.match();
+		ActionGenerator g = new ActionGenerator(src, dst, m.getMappings());
+		g.generate();
+		return g.getActions();
+	}
+
+	public List<GTAction> diffWithGrouping(File srcFile, File dstFile) throws IOException {
+		return diffWithGrouping(FileIOManager.getContent(srcFile).toCharArray(),
+				FileIOManager.getContent(dstFile).toCharArray());
+	}
+
+	public List<GTAction> diffWithGrouping(char[] srcSource, char[] dstSource) throws IOException {
+		//Each source is parsed once; line numbers of GTAction come from a line table, so the ASTs can be dropped.
+		ITree src = getTree(parse(srcSource)).getRoot();
+		ITree dst = getTree(parse(dstSource)).getRoot();
+		List<Action> actions = diff(src, dst);
+		//Group actions.
+		return ActionGrouper.group(actions, new LineIndex(srcSource), new LineIndex(dstSource));
+	}
+
+	public static CompilationUnit parse(char[] source) throws IOException {
+		CompilationUnit cu = ParseService.parse(source, ParseService.GUMTREE);
+		if((cu.getFlags() & ASTNode.MALFORMED) != 0)
+			throw new IOException("Syntax error in source");
+		return cu;
+	}
+
+	public static TreeContext getTree(CompilationUnit cu) {
+		JdtVisitor visitor = new JdtVisitor();
+		cu.accept(visitor);
+		TreeContext context = visitor.getTreeContext();
+		context.validate();
+		return context;
+	}
+
+	public TreeContext getTree(File file) throws IOException {
+		//Java files go through ParseService with the generator's settings.
+		if(file.getName().endsWith(".java"))
+			return getTree(parse(FileIOManager.getContent(file).toCharArray()));
+		return getGeneratorFactory(file).instantiate(new Object[]{}).generateFromFile(file);
+	}
+
+	public Matcher getMatcher(ITree src, ITree dst) {
+		if(matcherFactory == null)
+			return Matchers.getInstance().getMatcher(src, dst); // retrieve the default matcher
+		return matcherFactory.instantiate(new Object[]{src, dst, new MappingStore()});
+	}
+
+	private Registry.Factory<? extends TreeGenerator> getGeneratorFactory(File file) {
+		String name = file.getName();
+		String extension = name.substring(name.lastIndexOf('.') + 1);
+		Registry.Factory<? extends TreeGenerator> factory = generatorFactories.computeIfAbsent(extension,
+				e -> Generators.getInstance().getFactory(file.getAbsolutePath()));
+		if(factory == null)
+			throw new UnsupportedOperationException("No generator found for file:" + file.getAbsolutePath());
+		return factory;
+	}
+}
@@ -0,0 +1,264 @@
+package jcodelib.diffutil;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.DiffAlgorithm.SupportedAlgorithm;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.Sequence;
+import org.eclipse.jgit.diff.SequenceComparator;
+
+import jcodelib.element.Hunk;
+import jcodelib.element.Line;
+import jcodelib.element.LineSlices;
+import jcodelib.element.UnifiedHunk;
+import jcodelib.util.CodeUtils;
+
+/*
+ * Line differencing with JGit's diff algorithms, producing Hunk and UnifiedHunk instances directly
+ * instead of formatting diff text and parsing it back. Hunk lines are slices of the given sources.
+ */
+public class LineDiff {
+
+	//Lines are compared as they are.
+	public static final int EXACT = 0;
+	//Whitespace is ignored.
+	public static final int IGNORE_WHITESPACE = 1;
+	//Comments are ignored and lines are compared after CodeUtils.normalizeLine.
+	public static final int NORMALIZED = 2;
+
+	private DiffAlgorithm algorithm;
+	private int comparison;
+
+	public LineDiff() {
+		this(SupportedAlgorithm.HISTOGRAM, EXACT);
+	}
+
+	public LineDiff(SupportedAlgorithm algorithm, int comparison) {
+		this.algorithm = DiffAlgorithm.getAlgorithm(algorithm);
+		this.comparison = comparison;
+	}
+
+	public static List<Hunk> diff(String oldSource, String newSource) {
+		return new LineDiff().getHunks(oldSource, newSource);
+	}
+
+	public EditList getEdits(Lines oldLines, Lines newLines) {
+		return algorithm.diff(LineComparator.INSTANCE, oldLines, newLines);
+	}
+
+	//Hunks as in the normal diff format, e.g. 12,14c12,15.
+	public List<Hunk> getHunks(String oldSource, String newSource) {
+		Lines oldLines = new Lines(oldSource, comparison);
+		Lines newLines = new Lines(newSource, comparison);
+		List<Hunk> hunks = new ArrayList<>();
+		for(Edit edit : getEdits(oldLines, newLines)){
+			if(oldLines.isIgnorable(edit.getBeginA(), edit.getEndA())
+					&& newLines.isIgnorable(edit.getBeginB(), edit.getEndB()))
+				continue;
+			Hunk hunk;
+			switch(edit.getType()){
+			case INSERT:
+				hunk = new Hunk("a", edit.getBeginA(), edit.getBeginA(), edit.getBeginB() + 1, edit.getEndB());
+				break;
+			case DELETE:
+				hunk = new Hunk("d", edit.getBeginA() + 1, edit.getEndA(), edit.getBeginB(), edit.getBeginB());
+				break;
+			default:
+				hunk = new Hunk("c", edit.getBeginA() + 1, edit.getEndA(), edit.getBeginB() + 1, edit.getEndB());
+			}
+			oldLines.addSlices(hunk.deletedLines, edit.getBeginA(), edit.getEndA(), false);
+			newLines.addSlices(hunk.addedLines, edit.getBeginB(), edit.getEndB(), false);
+			if(DiffParser.checkHunk(hunk))
+				hunks.add(hunk);
+		}
+		return hunks;
+	}
+
+	//Hunks as in the unified diff format with the given number of context lines, as git diff would group them.
+	public List<UnifiedHunk> getUnifiedHunks(String oldFileName, String newFileName, String oldSource, String newSource, int context) {
+		Lines oldLines = new Lines(oldSource, comparison);
+		Lines newLines = new Lines(newSource, comparison);
+		List<Edit> edits = new ArrayList<>();
+		for(Edit edit : getEdits(oldLines, newLines)){
+			if(!oldLines.isIgnorable(edit.getBeginA(), edit.getEndA())
+					|| !newLines.isIgnorable(edit.getBeginB(), edit.getEndB()))
+				edits.add(edit);
+		}
+
+		List<UnifiedHunk> hunks = new ArrayList<>();
+		int first = 0;
+		while(first < edits.size()){
+			//Merge edits whose context would overlap.
+			int last = first;
+			while(last + 1 < edits.size()
+					&& edits.get(last + 1).getBeginA() - edits.get(last).getEndA() <= 2 * context){
+				last++;
+			}
+			Edit head = edits.get(first);
+			Edit tail = edits.get(last);
+			int oldStart = Math.max(head.getBeginA() - context, 0);
+			int newStart = Math.max(head.getBeginB() - context, 0);
+			int oldEnd = Math.min(tail.getEndA() + context, oldLines.size());
+			int newEnd = Math.min(tail.getEndB() + context, newLines.size());
+			int oldLength = oldEnd - oldStart;
+			int newLength = newEnd - newStart;
+			UnifiedHunk hunk = new UnifiedHunk(oldLength == 0 ? oldStart : oldStart + 1, oldLength,
+					newLength == 0 ? newStart : newStart + 1, newLength);
+			hunk.oldFileName = oldFileName;
+			hunk.newFileName = newFileName;
+			for(int i = first; i <= last; i++){
+				Edit edit = edits.get(i);
+				oldLines.addSlices(hunk.deletedLines, edit.getBeginA(), edit.getEndA(), true);
+				newLines.addSlices(hunk.addedLines, edit.getBeginB(), edit.getEndB(), true);
+			}
+			hunks.add(hunk);
+			first = last + 1;
+		}
+		return hunks;
+	}
+
+	/*
+	 * Lines of a source split at line feeds, a trailing line feed does not start a new line.
+	 * Each line keeps the offsets of its content and a hash of its comparison key.
+	 */
+	public static class Lines extends Sequence {
+		private String source;
+		private int[] starts;
+		private int[] ends;
+		private String[] keys;
+		private int[] hashes;
+		private int size;
+
+		public Lines(String source, int comparison) {
+			this.source = source;
+			int count = 0;
+			for(int i = 0; i < source.length(); i++){
+				if(source.charAt(i) == '\n')
+					count++;
+			}
+			if(source.length() > 0 && source.charAt(source.length() - 1) != '\n')
+				count++;
+			this.size = count;
+			this.starts = new int[count];
+			this.ends = new int[count];
+			int start = 0;
+			for(int line = 0; line < count; line++){
+				int end = source.indexOf('\n', start);
+				if(end < 0)
+					end = source.length();
+				starts[line] = start;
+				ends[line] = end;
+				start = end + 1;
+			}
+			this.hashes = new int[count];
+			if(comparison == EXACT){
+				for(int line = 0; line < count; line++){
+					hashes[line] = hash(source, starts[line], ends[line]);
+				}
+			}else{
+				this.keys = new String[count];
+				BitSet commentLines = comparison == NORMALIZED ? CodeUtils.getCommentLines(source) : null;
+				for(int line = 0; line < count; line++){
+					String code = source.substring(starts[line], ends[line]);
+					keys[line] = comparison == NORMALIZED
+							? normalize(code, line + 1, commentLines) : removeWhitespace(code);
+					hashes[line] = keys[line].hashCode();
+				}
+			}
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		public String getLine(int line) {
+			return source.substring(starts[line], ends[line]);
+		}
+
+		//Whether all lines in [begin, end) have an empty comparison key.
+		boolean isIgnorable(int begin, int end) {
+			if(keys == null)
+				return false;
+			for(int line = begin; line < end; line++){
+				if(keys[line].length() > 0)
+					return false;
+			}
+			return true;
+		}
+
+		void addSlices(LineSlices slices, int begin, int end, boolean trim) {
+			slices.setText(source);
+			for(int line = begin; line < end; line++){
+				int start = starts[line];
+				int stop = ends[line];
+				if(trim){
+					while(start < stop && source.charAt(start) <= ' ')
+						start++;
+					while(stop > start && source.charAt(stop - 1) <= ' ')
+						stop--;
+				}
+				slices.add(line + 1, start, stop);
+			}
+		}
+
+		private boolean regionEquals(int line, Lines other, int otherLine) {
+			if(keys != null)
+				return keys[line].equals(other.keys[otherLine]);
+			int length = ends[line] - starts[line];
+			return length == other.ends[otherLine] - other.starts[otherLine]
+					&& source.regionMatches(starts[line], other.source, other.starts[otherLine], length);
+		}
+
+		private static int hash(String source, int start, int end) {
+			int h = 1;
+			for(int i = start; i < end; i++){
+				h = 31 * h + source.charAt(i);
+			}
+			return h;
+		}
+
+		private static String removeWhitespace(String code) {
+			StringBuilder sb = new StringBuilder(code.length());
+			for(int i = 0; i < code.length(); i++){
+				if(!Character.isWhitespace(code.charAt(i)))
+					sb.append(code.charAt(i));
+			}
+			return sb.toString();
+		}
+
+		//Same steps as CodeUtils.normalizeHunk: drop comments, then normalize what is left.
+		private static String normalize(String code, int lineNum, BitSet commentLines) {
+			if(commentLines.get(lineNum))
+				return "";
+			code = code.trim();
+			if(code.indexOf("/*") >= 0){
+				code = code.substring(0, code.indexOf("/*"));
+			}else if(code.indexOf("//") >= 0){
+				code = code.substring(0, code.indexOf("//"));
+			}
+			if(code.trim().length() == 0)
+				return "";
+			Line normalized = CodeUtils.normalizeLine(new Line(lineNum, code));
+			return normalized == null ? "" : normalized.code;
+		}
+	}
+
+	private static class LineComparator extends SequenceComparator<Lines> {
+		static final LineComparator INSTANCE = new LineComparator();
+
+		@Override
+		public boolean equals(Lines a, int ai, Lines b, int bi) {
+			return a.hashes[ai] == b.hashes[bi] && a.regionEquals(ai, b, bi);
+		}
+
+		@Override
+		public int hash(Lines seq, int ptr) {
+			return seq.hashes[ptr];
+		}
+	}
+}
@@ -3,9 +3,8 @@ package jcodelib.element;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.function.IntUnaryOperator;
 
-import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.CompilationUnit;
 
 import com.github.gumtreediff.actions.model.Action;
@@ -13,6 +12,10 @@ import com.github.gumtreediff.actions.model.Delete;
 import com.github.gumtreediff.actions.model.Insert;
 import com.github.gumtreediff.actions.model.Move;
 import com.github.gumtreediff.actions.model.Update;
+import com.github.gumtreediff.tree.ITree;
+
+import jcodelib.util.CodeUtils;
+import jcodelib.util.LineIndex;
 
 public class GTAction {
 
@@ -26,7 +29,7 @@ public class GTAction {
 	public GTAction(Action action){
 		this.action = action;
 		this.actionType = getActionType(action);
-		this.codeType = ASTNode.nodeClassForType(action.getNode().getType()).getSimpleName();;
+		this.codeType = CodeUtils.getTypeName(action.getNode().getType());
 		this.children = new ArrayList<GTAction>();
 		this.charStr = "";
 		this.size = 0;
@@ -35,30 +38,47 @@ public class GTAction {
 	public GTAction(Action action, CompilationUnit srcCu, CompilationUnit dstCu){
 		this.action = action;
 		this.actionType = getActionType(action);
-		this.codeType = ASTNode.nodeClassForType(action.getNode().getType()).getSimpleName();;
+		this.codeType = CodeUtils.getTypeName(action.getNode().getType());
 		this.children = new ArrayList<GTAction>();
 		setCharStr(srcCu, dstCu);
 		this.size = 0;
 	}
 
+	public GTAction(Action action, LineIndex srcLines, LineIndex dstLines){
+		this.action = action;
+		this.actionType = getActionType(action);
+		this.codeType = CodeUtils.getTypeName(action.getNode().getType());
+		this.children = new ArrayList<GTAction>();
+		setCharStr(srcLines, dstLines);
+		this.size = 0;
+	}
+
 	public void setCharStr(CompilationUnit srcCu,  CompilationUnit dstCu){
-		StringBuffer sb = new StringBuffer();
+		setCharStr(srcCu::getLineNumber, dstCu::getLineNumber);
+	}
+
+	public void setCharStr(LineIndex srcLines, LineIndex dstLines){
+		setCharStr(srcLines::getLineNumber, dstLines::getLineNumber);
+	}
+
+	private void setCharStr(IntUnaryOperator srcLine, IntUnaryOperator dstLine){
+		StringBuilder sb = new StringBuilder();
 		sb.append(actionType);
 		sb.append("\t");
-		sb.append(convertNodeType(action.getNode().toShortString()));
+		sb.append(convertNodeType(action.getNode()));
 		sb.append("[");
 		if(actionType.equals("INS")){
-			sb.append(dstCu.getLineNumber(action.getNode().getPos()));
+			sb.append(dstLine.applyAsInt(action.getNode().getPos()));
 		}else{
-			sb.append(srcCu.getLineNumber(action.getNode().getPos()));
+			sb.append(srcLine.applyAsInt(action.getNode().getPos()));
 		}
 		sb.append("]");
 		if(actionType.equals("MOV")){
 			Move move = (Move)action;
 			sb.append("\tTO\t");
-			sb.append(convertNodeType(move.getParent().toShortString()));
+			sb.append(convertNodeType(move.getParent()));
 			sb.append("[");
-			sb.append(dstCu.getLineNumber(move.getParent().getPos()));
+			sb.append(dstLine.applyAsInt(move.getParent().getPos()));
 			sb.append("]");
 		}else if(actionType.equals("UPD")){
 			Update update = (Update)action;
@@ -108,13 +128,29 @@ public class GTAction {
 		return actionType;
 	}
 
+	private String convertNodeType(ITree node){
+		//toShortString() starts with the node type, so the lookup can use getType() directly.
+		String shortString = node.toShortString();
+		String prefix = node.getType() + ITree.SEPARATE_SYMBOL;
+		if(shortString.startsWith(prefix)){
+			return shortString.replace(prefix, CodeUtils.getTypeName(node.getType()) + ITree.SEPARATE_SYMBOL);
+		}
+		return convertNodeType(shortString);
+	}
+
 	public String convertNodeType(String actionString){
-		Pattern nodeTypePattern = Pattern.compile("([0-9]+)(@@)");
-		java.util.regex.Matcher matcher = nodeTypePattern.matcher(actionString);
-		if(matcher.find()){
-			int nodeType = Integer.parseInt(matcher.group(1));
-			return actionString.replaceAll(nodeType+"@@", ASTNode.nodeClassForType(nodeType).getSimpleName()+"@@");
+		//Replace every "<type>@@" with "<TypeName>@@", the type being the first digits followed by @@.
+		int separator = actionString.indexOf(ITree.SEPARATE_SYMBOL);
+		while(separator > 0 && !Character.isDigit(actionString.charAt(separator-1))){
+			separator = actionString.indexOf(ITree.SEPARATE_SYMBOL, separator+1);
+		}
+		if(separator <= 0)
+			return actionString;
+		int start = separator;
+		while(start > 0 && Character.isDigit(actionString.charAt(start-1))){
+			start--;
 		}
-		return actionString;
+		int nodeType = Integer.parseInt(actionString.substring(start, separator));
+		return actionString.replace(nodeType + ITree.SEPARATE_SYMBOL, CodeUtils.getTypeName(nodeType) + ITree.SEPARATE_SYMBOL);
 	}
 }
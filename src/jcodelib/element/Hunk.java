@@ -3,14 +3,14 @@ package jcodelib.element;
 import java.io.Serializable;
 
 public class Hunk implements Serializable {
-	private static final long serialVersionUID = 1631846432639100238L;
+	private static final long serialVersionUID = -4906387466474585166L;
 	public String type;	//c:change, a:add, d:delete
 	public int startLine;
 	public int endLine;
 	public int newStartLine;
 	public int newEndLine;
-	public String deletedCode;
-	public String addedCode;
+	public LineSlices deletedLines;
+	public LineSlices addedLines;
 
 	public Hunk(String type, int startLine, int endLine, int newStartLine,
 			int newEndLine) {
@@ -20,8 +20,16 @@ public class Hunk implements Serializable {
 		this.endLine = endLine;
 		this.newStartLine = newStartLine;
 		this.newEndLine = newEndLine;
-		this.deletedCode = "";
-		this.addedCode = "";
+		this.deletedLines = new LineSlices();
+		this.addedLines = new LineSlices();
+	}
+
+	public String getDeletedCode(){
+		return deletedLines.join();
+	}
+
+	public String getAddedCode(){
+		return addedLines.join();
 	}
 
 
@@ -0,0 +1,119 @@
+package jcodelib.element;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Numbered lines stored as [start, end) offsets into a shared text, usually the diff they were parsed from.
+ * Line contents are only copied when asked for.
+ */
+public class LineSlices implements Serializable {
+	private static final long serialVersionUID = -2713981513707342618L;
+	private CharSequence text;
+	private int[] lineNums;
+	private int[] starts;
+	private int[] ends;
+	private int size;
+
+	public LineSlices() {
+		this.lineNums = new int[4];
+		this.starts = new int[4];
+		this.ends = new int[4];
+		this.size = 0;
+	}
+
+	public void setText(CharSequence text) {
+		this.text = text;
+	}
+
+	public void add(int lineNum, int start, int end) {
+		if(size == lineNums.length){
+			lineNums = Arrays.copyOf(lineNums, size * 2);
+			starts = Arrays.copyOf(starts, size * 2);
+			ends = Arrays.copyOf(ends, size * 2);
+		}
+		lineNums[size] = lineNum;
+		starts[size] = start;
+		ends[size] = end;
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getLineNum(int index) {
+		return lineNums[index];
+	}
+
+	public int getStart(int index) {
+		return starts[index];
+	}
+
+	public int getEnd(int index) {
+		return ends[index];
+	}
+
+	public CharSequence getText() {
+		return text;
+	}
+
+	public String getLine(int index) {
+		return text.subSequence(starts[index], ends[index]).toString();
+	}
+
+	//Index of the line with the given number, -1 if absent. Line numbers are increasing.
+	public int indexOf(int lineNum) {
+		int index = Arrays.binarySearch(lineNums, 0, size, lineNum);
+		return index < 0 ? -1 : index;
+	}
+
+	public boolean isBlank() {
+		for(int i = 0; i < size; i++){
+			for(int pos = starts[i]; pos < ends[i]; pos++){
+				if(text.charAt(pos) > ' ')
+					return false;
+			}
+		}
+		return true;
+	}
+
+	//Lines joined, each followed by a line feed.
+	public String join() {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < size; i++){
+			sb.append(text, starts[i], ends[i]);
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+
+	public Map<Integer, String> toMap() {
+		Map<Integer, String> lines = new HashMap<>();
+		for(int i = 0; i < size; i++){
+			lines.put(lineNums[i], getLine(i));
+		}
+		return lines;
+	}
+
+	//Copy the slices out of a shared buffer before writing, only the lines themselves are serialized.
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		if(!(text instanceof String) && size > 0){
+			StringBuilder sb = new StringBuilder();
+			for(int i = 0; i < size; i++){
+				int start = sb.length();
+				sb.append(text, starts[i], ends[i]);
+				starts[i] = start;
+				ends[i] = sb.length();
+			}
+			text = sb.toString();
+		}else if(size == 0){
+			text = null;
+		}
+		out.defaultWriteObject();
+	}
+}
@@ -23,9 +23,9 @@ public class Mutation implements Serializable {
 		sb.append("|");
 		sb.append(hunk.endLine);
 		sb.append("\n");
-		sb.append(hunk.deletedCode);
+		sb.append(hunk.getDeletedCode());
 		sb.append("---\n");
-		sb.append(hunk.addedCode);
+		sb.append(hunk.getAddedCode());
 
 		return sb.toString();
 	}
@@ -1,8 +1,5 @@
 package jcodelib.element;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class UnifiedHunk {
 	public String oldFileName;
 	public String newFileName;
@@ -10,8 +7,8 @@ public class UnifiedHunk {
 	public int oldLength;
 	public int newLineNum;
 	public int newLength;
-	public Map<Integer, String> addedLines;
-	public Map<Integer, String> deletedLines;
+	public LineSlices addedLines;
+	public LineSlices deletedLines;
 
 	public UnifiedHunk(int oldLineNum, int oldLength, int newLineNum, int newLength) {
 		super();
@@ -21,8 +18,8 @@ public class UnifiedHunk {
 		this.oldLength = oldLength;
 		this.newLineNum = newLineNum;
 		this.newLength = newLength;
-		this.addedLines = new HashMap<>();
-		this.deletedLines = new HashMap<>();
+		this.addedLines = new LineSlices();
+		this.deletedLines = new LineSlices();
 	}
 
 	public boolean isJava(){
@@ -0,0 +1,62 @@
+package jcodelib.jgit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.lib.ObjectId;
+
+import jcodelib.diffutil.DiffParser;
+import jcodelib.element.UnifiedHunk;
+
+/*
+ * Changes of one file between two commits.
+ * Hunks are formatted from the DiffEntry on first access, so only one file's patch text is held at a time.
+ */
+public class FilePatch {
+	public ChangeType changeType;
+	public String oldPath;
+	public String newPath;
+	public ObjectId oldId;
+	public ObjectId newId;
+
+	private DiffEntry entry;
+	private DiffFormatter formatter;
+	private ByteArrayOutputStream buffer;
+	private List<UnifiedHunk> hunks;
+
+	//The formatter writes to the buffer, which is shared by all patches of a visit.
+	public FilePatch(DiffEntry entry, DiffFormatter formatter, ByteArrayOutputStream buffer) {
+		this.changeType = entry.getChangeType();
+		this.oldPath = entry.getOldPath();
+		this.newPath = entry.getNewPath();
+		this.oldId = entry.getOldId().toObjectId();
+		this.newId = entry.getNewId().toObjectId();
+		this.entry = entry;
+		this.formatter = formatter;
+		this.buffer = buffer;
+	}
+
+	//Only valid while the patches are being visited, the formatter is closed afterwards.
+	public List<UnifiedHunk> getHunks() throws IOException {
+		if(hunks == null){
+			buffer.reset();
+			formatter.format(entry);
+			formatter.flush();
+			hunks = DiffParser.parseUnitifedDiff(buffer.toString());
+		}
+		return hunks;
+	}
+
+	public String getPath() {
+		return changeType == ChangeType.DELETE ? oldPath : newPath;
+	}
+
+	@Override
+	public String toString() {
+		return changeType + "\t" + oldPath + "\t" + newPath;
+	}
+}
@@ -0,0 +1,282 @@
+package jcodelib.jgit;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
+
+import com.github.gumtreediff.actions.model.Action;
+import com.github.gumtreediff.tree.ITree;
+
+import jcodelib.diffutil.ActionGrouper;
+import jcodelib.diffutil.DiffSession;
+import jcodelib.element.GTAction;
+import jcodelib.util.LineIndex;
+
+/*
+ * Mines the modified .java files of a repository in stages: commit enumeration, blob loading, parsing,
+ * matching and writing. Stages run on their own threads and hand changes over through bounded queues,
+ * so a slow stage holds back the ones before it instead of letting changes pile up in memory.
+ * Every thread that reads objects keeps its own ObjectReader and RevWalk.
+ */
+public class MiningPipeline {
+
+	private static final Change POISON = new Change(null, null, null, null, null);
+
+	private Repository repos;
+	private DiffSession session;
+	private int threads;
+	private int queueSize;
+
+	public MiningPipeline(Repository repos, DiffSession session, int threads) {
+		this.repos = repos;
+		this.session = session;
+		this.threads = threads;
+		this.queueSize = threads * 4;
+	}
+
+	public Stats run(List<String> commitIds, PrintWriter pw) throws InterruptedException {
+		BlockingQueue<Change> entries = new ArrayBlockingQueue<>(queueSize);
+		BlockingQueue<Change> loaded = new ArrayBlockingQueue<>(queueSize);
+		BlockingQueue<Change> parsed = new ArrayBlockingQueue<>(queueSize);
+		BlockingQueue<Change> matched = new ArrayBlockingQueue<>(queueSize);
+		Stats stats = new Stats();
+		long start = System.nanoTime();
+
+		List<Thread> workers = new ArrayList<>();
+		workers.add(new Thread(() -> enumerate(commitIds, entries, threads), "mining-commits"));
+		startStage(workers, "mining-blobs", entries, loaded, threads, new BlobLoader());
+		startStage(workers, "mining-parse", loaded, parsed, threads, () -> this::parse);
+		startStage(workers, "mining-match", parsed, matched, threads, () -> this::match);
+		workers.add(new Thread(() -> write(matched, threads, pw, stats), "mining-writer"));
+		for(Thread worker : workers) {
+			worker.start();
+		}
+		for(Thread worker : workers) {
+			worker.join();
+		}
+
+		stats.seconds = (System.nanoTime() - start) / 1e9;
+		return stats;
+	}
+
+	//Stage 1: walk the commits and queue one change per modified .java file.
+	private void enumerate(List<String> commitIds, BlockingQueue<Change> out, int consumers) {
+		try (ObjectReader reader = repos.newObjectReader();
+				RevWalk walk = new RevWalk(reader);
+				DiffFormatter formatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+			formatter.setRepository(repos);
+			formatter.setPathFilter(PathSuffixFilter.create(".java"));
+			for(String commitId : commitIds) {
+				List<Change> changes = new ArrayList<>();
+				try {
+					RevCommit commit = walk.parseCommit(ObjectId.fromString(commitId));
+					if(commit.getParentCount() == 0)
+						continue;
+					RevCommit parent = walk.parseCommit(commit.getParent(0));
+					for(DiffEntry entry : ReposHandler.getModifiedJavaFiles(formatter, parent.getTree(), commit.getTree())) {
+						changes.add(new Change(parent.getName(), commitId, entry.getNewPath(),
+								entry.getOldId().toObjectId(), entry.getNewId().toObjectId()));
+					}
+				} catch (Throwable e) {
+					//e.g. a LargeObjectException from JGit: report the commit as failed and go on.
+					Change failed = new Change(null, commitId, null, null, null);
+					failed.error = e;
+					changes.clear();
+					changes.add(failed);
+				}
+				for(Change change : changes) {
+					out.put(change);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		} finally {
+			poison(out, consumers);
+		}
+	}
+
+	private void startStage(List<Thread> workers, String name, BlockingQueue<Change> in, BlockingQueue<Change> out,
+			int count, StageFactory factory) {
+		AtomicInteger running = new AtomicInteger(count);
+		for(int i = 0; i < count; i++) {
+			workers.add(new Thread(() -> {
+				Stage stage = factory.create();
+				try {
+					Change change;
+					while((change = in.take()) != POISON) {
+						if(change.error == null) {
+							try {
+								stage.process(change);
+							} catch (Throwable e) {
+								//Also StackOverflowError or OutOfMemoryError on a pathological file,
+								//the worker must keep draining its queue.
+								change.error = e;
+								change.release();
+							}
+						}
+						out.put(change);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					stage.close();
+					//The last worker of a stage closes the next one.
+					if(running.decrementAndGet() == 0)
+						poison(out, threads);
+				}
+			}, name + "-" + i));
+		}
+	}
+
+	//Stage 2: load both blobs with the thread's own reader.
+	private class BlobLoader implements StageFactory {
+		@Override
+		public Stage create() {
+			ObjectReader reader = repos.newObjectReader();
+			return new Stage() {
+				@Override
+				public void process(Change change) throws Exception {
+					change.oldSource = ReposHandler.getContent(reader, change.oldId);
+					change.newSource = ReposHandler.getContent(reader, change.newId);
+				}
+
+				@Override
+				public void close() {
+					reader.close();
+				}
+			};
+		}
+	}
+
+	//Stage 3: parse both sides into GumTree trees, keeping only line tables of the sources.
+	private void parse(Change change) throws IOException {
+		change.oldTree = DiffSession.getTree(DiffSession.parse(change.oldSource)).getRoot();
+		change.newTree = DiffSession.getTree(DiffSession.parse(change.newSource)).getRoot();
+		change.oldLines = new LineIndex(change.oldSource);
+		change.newLines = new LineIndex(change.newSource);
+		change.oldSource = null;
+		change.newSource = null;
+	}
+
+	//Stage 4: match and group actions.
+	private void match(Change change) {
+		List<Action> actions = session.diff(change.oldTree, change.newTree);
+		List<GTAction> gtActions = ActionGrouper.group(actions, change.oldLines, change.newLines);
+		change.results = new ArrayList<>(gtActions.size());
+		for(GTAction action : gtActions) {
+			change.results.add(action.toString());
+		}
+		change.release();
+	}
+
+	//Stage 5: write results in completion order.
+	private void write(BlockingQueue<Change> in, int producers, PrintWriter pw, Stats stats) {
+		int remaining = producers;
+		try {
+			while(remaining > 0) {
+				Change change = in.take();
+				if(change == POISON) {
+					remaining--;
+					continue;
+				}
+				pw.println(change.path == null ? change.newCommitId : change.newCommitId + "\t" + change.path);
+				if(change.error != null) {
+					stats.failures++;
+					pw.println("ERROR\t" + change.error);
+				} else {
+					for(String line : change.results)
+						pw.println(line);
+				}
+				stats.changes++;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			pw.flush();
+		}
+	}
+
+	private static void poison(BlockingQueue<Change> queue, int consumers) {
+		try {
+			for(int i = 0; i < consumers; i++) {
+				queue.put(POISON);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private interface Stage {
+		void process(Change change) throws Exception;
+
+		default void close() {
+		}
+	}
+
+	private interface StageFactory {
+		Stage create();
+	}
+
+	public static class Change {
+		public String oldCommitId;
+		public String newCommitId;
+		public String path;
+		public ObjectId oldId;
+		public ObjectId newId;
+		public List<String> results;
+		public Throwable error;
+
+		private char[] oldSource;
+		private char[] newSource;
+		private ITree oldTree;
+		private ITree newTree;
+		private LineIndex oldLines;
+		private LineIndex newLines;
+
+		public Change(String oldCommitId, String newCommitId, String path, ObjectId oldId, ObjectId newId) {
+			this.oldCommitId = oldCommitId;
+			this.newCommitId = newCommitId;
+			this.path = path;
+			this.oldId = oldId;
+			this.newId = newId;
+		}
+
+		//Drop intermediate data once it is no longer needed.
+		private void release() {
+			oldSource = null;
+			newSource = null;
+			oldTree = null;
+			newTree = null;
+			oldLines = null;
+			newLines = null;
+		}
+	}
+
+	public static class Stats {
+		public int changes;
+		public int failures;
+		public double seconds;
+
+		@Override
+		public String toString() {
+			return String.format("%d changed files (%d failed) in %.2fs, %.2f files/s",
+					changes, failures, seconds, seconds > 0 ? changes / seconds : 0);
+		}
+	}
+}
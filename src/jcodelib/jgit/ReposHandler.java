@@ -13,9 +13,11 @@ import org.eclipse.jgit.api.errors.CheckoutConflictException;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.api.errors.NoHeadException;
 import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.eclipse.jgit.diff.DiffFormatter;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
@@ -25,6 +27,9 @@ import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 import org.eclipse.jgit.treewalk.AbstractTreeIterator;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+import org.eclipse.jgit.util.RawParseUtils;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
 
 public class ReposHandler {
 
@@ -42,19 +47,19 @@ public class ReposHandler {
 
 	public static AbstractTreeIterator getTreeParser(Repository repository, String objectId)
 			throws IOException, MissingObjectException, IncorrectObjectTypeException {
-		RevWalk walk = new RevWalk(repository);
+		try (RevWalk walk = new RevWalk(repository)) {
+			return getTreeParser(walk, objectId);
+		}
+	}
+
+	//Reuses the walk and its reader, for callers that look up many commits.
+	public static AbstractTreeIterator getTreeParser(RevWalk walk, String objectId)
+			throws IOException, MissingObjectException, IncorrectObjectTypeException {
 		RevCommit commit = walk.parseCommit(ObjectId.fromString(objectId));
 		RevTree tree = walk.parseTree(commit.getTree().getId());
 
 		CanonicalTreeParser treeParser = new CanonicalTreeParser();
-		ObjectReader reader = repository.newObjectReader();
-		try {
-			treeParser.reset(reader, tree.getId());
-		} finally {
-			reader.close();
-		}
-
-		walk.close();
+		treeParser.reset(walk.getObjectReader(), tree.getId());
 
 		return treeParser;
 	}
@@ -126,50 +131,90 @@ public class ReposHandler {
 	public static List<String> getChangedJavaFiles(Repository repos, String oldCommitId, String newCommitId)
 			throws MissingObjectException, IncorrectObjectTypeException, IOException, GitAPIException {
 		List<String> changedJavaFiles = new ArrayList<String>();
-
-		//Get name and status.
-		AbstractTreeIterator oldTreeParser = getTreeParser(repos, oldCommitId);
-		AbstractTreeIterator newTreeParser = getTreeParser(repos, newCommitId);
-		Git git = new Git(repos);
-		List<DiffEntry> diff = git.diff()
-				.setShowNameAndStatusOnly(true)
-				.setOldTree(oldTreeParser)
-				.setNewTree(newTreeParser)
-				.call();
-		ByteArrayOutputStream os = null;
-		String nameAndStatus = null;
-		try {
-			os = new ByteArrayOutputStream();
-			DiffFormatter formatter = new DiffFormatter(os);
+		try (DiffFormatter formatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
 			formatter.setRepository(repos);
-			formatter.format(diff);
-			nameAndStatus = os.toString();
-			formatter.close();
-		} catch (IOException e) {
-			e.printStackTrace();
-		} finally {
-			try {
-				if (os != null) {
-					os.close();
+			formatter.setPathFilter(PathSuffixFilter.create(".java"));
+			for(DiffEntry entry : formatter.scan(getTreeParser(repos, oldCommitId), getTreeParser(repos, newCommitId))){
+				if(entry.getChangeType() == ChangeType.MODIFY){
+					changedJavaFiles.add(entry.getNewPath());
 				}
-			} catch (IOException e) {
-				e.printStackTrace();
 			}
 		}
-		git.close();
 
-		//Parse and collect java file paths.
-		if(nameAndStatus != null){
-			String[] lines = nameAndStatus.split("\\n");
-			System.out.println(nameAndStatus);
-			for(String line : lines){
-				if(line.startsWith("M")
-						&& line.endsWith(".java")){
-					changedJavaFiles.add(line.substring(1).trim());
+		return changedJavaFiles;
+	}
+
+	/*
+	 * Visits one FilePatch per changed .java file between two commits.
+	 * Patches are created one at a time from the DiffEntry list and their hunks are formatted on demand,
+	 * so memory is bounded by the largest single file instead of the whole diff.
+	 */
+	public static void visitJavaPatches(Repository repos, String oldCommitId, String newCommitId, PatchVisitor visitor)
+			throws MissingObjectException, IncorrectObjectTypeException, IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		try (DiffFormatter formatter = new DiffFormatter(buffer)) {
+			formatter.setRepository(repos);
+			formatter.setPathFilter(PathSuffixFilter.create(".java"));
+			for(DiffEntry entry : formatter.scan(getTreeParser(repos, oldCommitId), getTreeParser(repos, newCommitId))){
+				visitor.visit(new FilePatch(entry, formatter, buffer));
+			}
+		}
+	}
+
+	//Modified .java files between two trees, read from the object database only.
+	public static List<DiffEntry> getModifiedJavaFiles(DiffFormatter formatter, RevTree oldTree, RevTree newTree)
+			throws IOException {
+		List<DiffEntry> modified = new ArrayList<DiffEntry>();
+		for(DiffEntry entry : formatter.scan(oldTree, newTree)){
+			if(entry.getChangeType() == ChangeType.MODIFY){
+				modified.add(entry);
+			}
+		}
+		return modified;
+	}
+
+	public static char[] getContent(ObjectReader reader, ObjectId blobId)
+			throws MissingObjectException, IncorrectObjectTypeException, IOException {
+		byte[] bytes = reader.open(blobId, Constants.OBJ_BLOB).getCachedBytes(Integer.MAX_VALUE);
+		return RawParseUtils.decode(bytes).toCharArray();
+	}
+
+	/*
+	 * Walks the commits of getAllCommitIds and passes the old and new contents of every modified .java file
+	 * to the handler, comparing each commit with its first parent.
+	 * Blobs are loaded through one shared ObjectReader; nothing is checked out, so the working tree is left untouched.
+	 */
+	public static int mine(Git git, ChangeHandler handler) throws IOException, GitAPIException {
+		Repository repos = git.getRepository();
+		List<String> commitIds = getAllCommitIds(git);
+		int count = 0;
+		try (ObjectReader reader = repos.newObjectReader();
+				RevWalk walk = new RevWalk(reader);
+				DiffFormatter formatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+			formatter.setRepository(repos);
+			formatter.setPathFilter(PathSuffixFilter.create(".java"));
+			for(String commitId : commitIds){
+				RevCommit commit = walk.parseCommit(ObjectId.fromString(commitId));
+				if(commit.getParentCount() == 0)
+					continue;
+				RevCommit parent = walk.parseCommit(commit.getParent(0));
+				for(DiffEntry entry : getModifiedJavaFiles(formatter, parent.getTree(), commit.getTree())){
+					char[] oldSource = getContent(reader, entry.getOldId().toObjectId());
+					char[] newSource = getContent(reader, entry.getNewId().toObjectId());
+					handler.handle(parent.getName(), commitId, entry.getNewPath(), oldSource, newSource);
+					count++;
 				}
 			}
 		}
+		return count;
+	}
 
-		return changedJavaFiles;
+	public interface PatchVisitor {
+		void visit(FilePatch patch) throws IOException;
+	}
+
+	public interface ChangeHandler {
+		void handle(String oldCommitId, String newCommitId, String path, char[] oldSource, char[] newSource)
+				throws IOException;
 	}
 }
@@ -3,19 +3,12 @@ package jcodelib.parser;
 import jcodelib.element.CDChange;
 import org.eclipse.jdt.core.dom.*;
 
-import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.*;
-import java.util.function.BiConsumer;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
 public class JavaCodeVisitor extends ASTVisitor {
 
-    private final MessageDigest md5;
     private Stack<TreeNode> nodeStack;
-    HashMap<CDChange, LinkedList<TreeNode>> results = new HashMap<>();
+    LinkedHashMap<CDChange, LinkedList<TreeNode>> results = new LinkedHashMap<>();
     Queue<TreeNode> queue = new LinkedList<>();
     private TreeNode currentOldNode;
 
@@ -23,12 +16,6 @@ public class JavaCodeVisitor extends ASTVisitor {
         this.nodeStack = new Stack<>();
         this.nodeStack.push(root);
         queue.add(nodeStack.peek());
-
-        try {
-            this.md5 = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
     }
 
     public void traversePreOrder(TreeNode newRootNode) {
@@ -39,16 +26,15 @@ public class JavaCodeVisitor extends ASTVisitor {
         // else TODO check if Update or Remove
         // else add as Delete because no match could be found
         // Lastly, check new Tree for unmatched and add as INSERT
+        TreeMatcher matcher = new TreeMatcher(newRootNode);
         while (!queue.isEmpty()) {
             currentOldNode = queue.poll();
             if (currentOldNode.isRoot()) {
                 queue.addAll(currentOldNode.children);
-            } else if (pruneTree(currentOldNode, newRootNode)) {
-                System.out.println("removed");
-
-                currentOldNode.getParent().children.removeIf(childNode -> childNode.hash.equals(currentOldNode.hash));
+            } else if (pruneTree(currentOldNode, matcher)) {
+                currentOldNode.getParent().children.removeIf(childNode -> childNode.hash == currentOldNode.hash);
             } else {
-                if (!matchWithSimilarity(newRootNode)) {
+                if (!matchWithSimilarity(matcher)) {
                     //TODO add OTHER CD CHANGES
                     //CDChange.MOVE CDChange.Update
                     putChangeToResults(CDChange.DELETE, currentOldNode);
@@ -60,18 +46,14 @@ public class JavaCodeVisitor extends ASTVisitor {
         queue.add(newRootNode);
         while (!queue.isEmpty()) {
             TreeNode currentNewNode = queue.poll();
-            System.out.println("Nodes Match " + currentNewNode.isMatched());
             if (!currentNewNode.isMatched()) {
                 putChangeToResults(CDChange.INSERT, currentNewNode);
             }
             queue.addAll(currentNewNode.children);
         }
 
-
-        System.out.println("done");
-
         // find any DEL import statements and add the parent as DEL changes as well
-        HashMap<CDChange, LinkedList<TreeNode>> additionalImportDels = new HashMap<>();
+        LinkedHashMap<CDChange, LinkedList<TreeNode>> additionalImportDels = new LinkedHashMap<>();
 
         results.forEach((cdChange, treeNodes) -> {
             if (cdChange.getChangeType().equals("DEL")) {
@@ -84,75 +66,30 @@ public class JavaCodeVisitor extends ASTVisitor {
             }
         });
         results.putAll(additionalImportDels);
-        results.forEach((cdChange, treeNodes) -> System.out.println(cdChange));
-        //System.out.println(results);
     }
 
-    private boolean matchWithSimilarity(TreeNode newRootNode) {
-        Queue<TreeNode> queue = new LinkedList<>();
-        queue.add(newRootNode);
-
-        // breadth first search
-        while (!queue.isEmpty()) {
-            TreeNode currentNewNode = queue.poll();
-
-
-            if (!currentNewNode.isMatched() && checkSimilarity(currentNewNode)) {
-                System.out.println("Similar enough!");
+    public Map<CDChange, LinkedList<TreeNode>> getResults() {
+        return results;
+    }
 
-                currentNewNode.setMatched(true);
-                currentOldNode.setMatched(true);
-                queue.clear();
-                return true;
-            } else {
-                System.out.println("Not similar");
-                queue.addAll(currentNewNode.children);
-            }
+    private boolean matchWithSimilarity(TreeMatcher matcher) {
+        TreeNode currentNewNode = matcher.findSimilar(currentOldNode);
+        if (currentNewNode != null) {
+            matcher.match(currentOldNode, currentNewNode);
+            return true;
         }
         return false;
     }
 
-    private boolean checkSimilarity(TreeNode currentNewNode) {
-        double similarityCoefficient = 0.0;
-        double allChildren = currentOldNode.children.size() + currentNewNode.children.size();
-
-        //super confusing way to get different Nodes 
-        List<TreeNode> sameChildren = new LinkedList<>(currentOldNode.children);
-        List<TreeNode> differentChildren = new LinkedList<>(currentOldNode.children);
-        differentChildren.addAll(currentNewNode.children);
-        sameChildren.retainAll(differentChildren);
-        differentChildren.removeAll(sameChildren);
-
-        if (currentOldNode.getLabel().equals(currentNewNode.getLabel())) similarityCoefficient += 0.25;
-        if (currentOldNode.getParent().getLabel().equals(currentNewNode.getParent().getLabel()))
-            similarityCoefficient += 0.25;
-        similarityCoefficient += (1 - ((double) differentChildren.size() / allChildren)) / 2;
-
-        return similarityCoefficient >= 0.5;
-    }
-
     @Override
     public void postVisit(ASTNode node) {
         if (!(node instanceof ExpressionStatement)) {
             TreeNode treeNode = nodeStack.pop();
-            if (treeNode.isLeaf()) {
-                treeNode.hash = convertToHex(md5.digest(treeNode.getLabel().getBytes()));
-            } else {
-                String joined = treeNode.children.stream().map((Function<TreeNode, Object>) treeNode1 -> treeNode1.getASTNode().toString()).map(Object::toString).collect(Collectors.joining());
-                treeNode.hash = convertToHex(md5.digest(joined.getBytes()));
-            }
+            // children are popped before their parent, so their hashes are already set
+            treeNode.computeHash();
         }
     }
 
-    private String convertToHex(final byte[] messageDigest) {
-        BigInteger bigint = new BigInteger(1, messageDigest);
-        String hexText = bigint.toString(16);
-        while (hexText.length() < 32) {
-            hexText = "0".concat(hexText);
-        }
-        return hexText;
-    }
-
     @Override
     public void preVisit(ASTNode node) {
         //Ignore ExpressionStatement.
@@ -183,35 +120,15 @@ public class JavaCodeVisitor extends ASTVisitor {
         return false;
     }
 
-    private boolean pruneTree(TreeNode oldNode, TreeNode newRoot) {
-        Queue<TreeNode> queue = new LinkedList<>();
-        queue.add(newRoot);
-
-        // breadth first search
-        //TODO remove duplication of breadth first search
-        while (!queue.isEmpty()) {
-            TreeNode currentNewNode = queue.poll();
-            queue.addAll(currentNewNode.children);
-
-            if (checkIfNotMatchedAndSameHash(oldNode, currentNewNode)) {
-                System.out.println("Hash equal!");
-                // same for new tree
-                currentNewNode.getParent().children.removeIf(node -> node.hash.equals(currentNewNode.hash));
-
-                // algorithm done, exit while loop
-                queue.clear();
-                return true;
-            } else {
-                System.out.println("Hashes not equal, need to check children");
-            }
+    private boolean pruneTree(TreeNode oldNode, TreeMatcher matcher) {
+        // hash index lookup instead of a breadth first search of the new tree
+        TreeNode currentNewNode = matcher.findSameHash(oldNode);
+        if (currentNewNode != null) {
+            // same for new tree
+            matcher.prune(currentNewNode);
+            return true;
         }
         return false;
-
-    }
-
-    private boolean checkIfNotMatchedAndSameHash(TreeNode oldNode, TreeNode temp) {
-        //checks if node is already matched and checks if node has hash - normally only root does not have hash
-        return !temp.isMatched() && oldNode.hash != null && temp.hash != null && oldNode.hash.equals(temp.hash);
     }
 
     private void putChangeToResults(String changeType, TreeNode node) {
@@ -0,0 +1,171 @@
+package jcodelib.parser;
+
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FileASTRequestor;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Single place where JDT parsers are configured.
+ * Compiler options are computed once per language level and every thread reuses its own parser per level,
+ * so a parse only pays for the parse itself. Counts and times every parse.
+ */
+public class ParseService {
+
+    // CodeUtils: JLS8 AST, 1.8 compliance.
+    public static final Level JAVA_8 = new Level(AST.JLS8, getComplianceOptions(JavaCore.VERSION_1_8));
+    // TreeBuilder: JLS11 AST, 11 compliance.
+    public static final Level JAVA_11 = new Level(AST.JLS11, getComplianceOptions(JavaCore.VERSION_11));
+    // Same settings as GumTree's JdtTreeGenerator: JLS9 AST, 11 compliance, doc comments.
+    public static final Level GUMTREE = new Level(AST.JLS9, getGumTreeOptions());
+
+    private static final LongAdder parseCount = new LongAdder();
+    private static final LongAdder parseNanos = new LongAdder();
+    private static final LongAdder parsedChars = new LongAdder();
+
+    public static CompilationUnit parse(char[] source, Level level) {
+        ASTParser parser = level.getParser();
+        parser.setKind(ASTParser.K_COMPILATION_UNIT);
+        parser.setCompilerOptions(level.options);
+        parser.setSource(source);
+        return createAST(parser, source.length);
+    }
+
+    public static CompilationUnit parse(String source, Level level) {
+        return parse(source.toCharArray(), level);
+    }
+
+    // Parses with bindings resolved against the given class and source paths.
+    public static CompilationUnit parse(char[] source, Level level, String unitName, String[] classPath, String[] sourcePath) {
+        ASTParser parser = level.getParser();
+        parser.setKind(ASTParser.K_COMPILATION_UNIT);
+        parser.setCompilerOptions(level.options);
+        parser.setEnvironment(classPath, sourcePath, null, true);
+        parser.setUnitName(unitName);
+        parser.setResolveBindings(true);
+        parser.setSource(source);
+        return createAST(parser, source.length);
+    }
+
+    /*
+     * Parses all given files with bindings resolved in one shared environment, so classpath entries are read
+     * and common types are resolved once for the whole batch. Each unit is handed to the handler as soon as
+     * it is resolved and is not kept afterwards. A null encoding uses the platform default.
+     */
+    public static void parseAll(String[] sourceFiles, Level level, String[] classPath, String[] sourcePath,
+            String encoding, UnitHandler handler) {
+        ASTParser parser = level.getParser();
+        parser.setKind(ASTParser.K_COMPILATION_UNIT);
+        parser.setCompilerOptions(level.options);
+        parser.setEnvironment(classPath, sourcePath, null, true);
+        parser.setResolveBindings(true);
+        String[] encodings = null;
+        if (encoding != null) {
+            encodings = new String[sourceFiles.length];
+            Arrays.fill(encodings, encoding);
+        }
+        long chars = 0;
+        for (String sourceFile : sourceFiles) {
+            chars += new File(sourceFile).length();
+        }
+
+        long start = System.nanoTime();
+        try {
+            parser.createASTs(sourceFiles, encodings, new String[0], new FileASTRequestor() {
+                @Override
+                public void acceptAST(String sourceFilePath, CompilationUnit ast) {
+                    parseCount.increment();
+                    handler.accept(sourceFilePath, ast);
+                }
+            }, null);
+        } finally {
+            parseNanos.add(System.nanoTime() - start);
+            parsedChars.add(chars);
+        }
+    }
+
+    private static CompilationUnit createAST(ASTParser parser, int length) {
+        long start = System.nanoTime();
+        // createAST resets the parser, so it is ready for the next call on this thread.
+        CompilationUnit cu = (CompilationUnit) parser.createAST(null);
+        parseNanos.add(System.nanoTime() - start);
+        parseCount.increment();
+        parsedChars.add(length);
+        return cu;
+    }
+
+    public static long getParseCount() {
+        return parseCount.sum();
+    }
+
+    public static long getParseNanos() {
+        return parseNanos.sum();
+    }
+
+    public static long getParsedChars() {
+        return parsedChars.sum();
+    }
+
+    public static void resetMetrics() {
+        parseCount.reset();
+        parseNanos.reset();
+        parsedChars.reset();
+    }
+
+    public static String getMetrics() {
+        long count = getParseCount();
+        double millis = getParseNanos() / 1e6;
+        return String.format("%d parses, %d chars, %.2fms total, %.3fms/parse",
+                count, getParsedChars(), millis, count > 0 ? millis / count : 0);
+    }
+
+    private static Map<String, String> getComplianceOptions(String compliance) {
+        Map<String, String> options = JavaCore.getOptions();
+        JavaCore.setComplianceOptions(compliance, options);
+        return options;
+    }
+
+    private static Map<String, String> getGumTreeOptions() {
+        Map<String, String> options = JavaCore.getOptions();
+        options.put(JavaCore.COMPILER_COMPLIANCE, JavaCore.VERSION_11);
+        options.put(JavaCore.COMPILER_CODEGEN_TARGET_PLATFORM, JavaCore.VERSION_11);
+        options.put(JavaCore.COMPILER_SOURCE, JavaCore.VERSION_11);
+        options.put(JavaCore.COMPILER_DOC_COMMENT_SUPPORT, JavaCore.ENABLED);
+        return options;
+    }
+
+    public interface UnitHandler {
+        void accept(String sourceFile, CompilationUnit cu);
+    }
+
+    public static class Level {
+        private final int apiLevel;
+        private final Map<String, String> options;
+        private final ThreadLocal<ASTParser> parsers;
+
+        private Level(int apiLevel, Map<String, String> options) {
+            this.apiLevel = apiLevel;
+            this.options = Collections.unmodifiableMap(options);
+            this.parsers = ThreadLocal.withInitial(() -> ASTParser.newParser(apiLevel));
+        }
+
+        public int getApiLevel() {
+            return apiLevel;
+        }
+
+        public Map<String, String> getOptions() {
+            return options;
+        }
+
+        ASTParser getParser() {
+            return parsers.get();
+        }
+    }
+}
@@ -1,8 +1,6 @@
 package jcodelib.parser;
 
 import file.FileIOManager;
-import org.eclipse.jdt.core.dom.AST;
-import org.eclipse.jdt.core.dom.ASTParser;
 import org.eclipse.jdt.core.dom.CompilationUnit;
 
 import java.io.File;
@@ -26,12 +24,7 @@ public class TreeBuilder {
     }
 
     public static CompilationUnit getCompilationUnit(String source) {
-        ASTParser parser = ASTParser.newParser(AST.JLS11);
-        parser.setKind(ASTParser.K_COMPILATION_UNIT);
-        parser.setSource(source.toCharArray());
-        CompilationUnit cu = (CompilationUnit) parser.createAST(null);
-
-        return cu;
+        return ParseService.parse(source.toCharArray(), ParseService.JAVA_11);
     }
 
 }
@@ -0,0 +1,273 @@
+package jcodelib.parser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Hash/label index over the new tree, built once per diff.
+ * Lookups return the same node a breadth-first search of the new tree would find first.
+ */
+public class TreeMatcher {
+
+    private final TreeNode[] nodes;
+    private final int[] childCount;
+    private final boolean[] detached;
+    private final Map<TreeNode, Integer> indexOf = new IdentityHashMap<>();
+
+    private final Map<Long, HashBucket> hashIndex = new HashMap<>();
+    private final Map<String, Bucket> labelIndex = new HashMap<>();
+    private final Map<String, Bucket> parentIndex = new HashMap<>();
+    private final Map<String, Map<String, Bucket>> pairIndex = new HashMap<>();
+    private final Bucket all;
+
+    // Bucket positions of each node, indexed by breadth-first order.
+    private final Bucket[] labelOf;
+    private final Bucket[] parentOf;
+    private final Bucket[] pairOf;
+    private final int[] labelPos;
+    private final int[] parentPos;
+    private final int[] pairPos;
+    private final int[] allPos;
+
+    public TreeMatcher(TreeNode newRoot) {
+        List<TreeNode> order = new ArrayList<>();
+        Queue<TreeNode> queue = new ArrayDeque<>();
+        queue.add(newRoot);
+        while (!queue.isEmpty()) {
+            TreeNode node = queue.poll();
+            indexOf.put(node, order.size());
+            order.add(node);
+            queue.addAll(node.children);
+        }
+        int size = order.size();
+        nodes = order.toArray(new TreeNode[size]);
+        childCount = new int[size];
+        detached = new boolean[size];
+        labelOf = new Bucket[size];
+        parentOf = new Bucket[size];
+        pairOf = new Bucket[size];
+        labelPos = new int[size];
+        parentPos = new int[size];
+        pairPos = new int[size];
+        allPos = new int[size];
+        Arrays.fill(allPos, -1);
+
+        // Root has no parent and is never a candidate.
+        all = new Bucket();
+        for (int i = 0; i < size; i++) {
+            TreeNode node = nodes[i];
+            childCount[i] = node.children.size();
+            if (node.getParent() == null)
+                continue;
+            hashIndex.computeIfAbsent(node.hash, h -> new HashBucket()).members.add(i);
+            String label = node.getLabel();
+            String parentLabel = node.getParent().getLabel();
+            labelOf[i] = labelIndex.computeIfAbsent(label, l -> new Bucket());
+            parentOf[i] = parentIndex.computeIfAbsent(parentLabel, l -> new Bucket());
+            pairOf[i] = pairIndex.computeIfAbsent(label, l -> new HashMap<>())
+                    .computeIfAbsent(parentLabel, l -> new Bucket());
+            labelPos[i] = labelOf[i].add(i);
+            parentPos[i] = parentOf[i].add(i);
+            pairPos[i] = pairOf[i].add(i);
+            allPos[i] = all.add(i);
+        }
+        for (Bucket bucket : labelIndex.values())
+            bucket.build(childCount);
+        for (Bucket bucket : parentIndex.values())
+            bucket.build(childCount);
+        for (Map<String, Bucket> buckets : pairIndex.values())
+            for (Bucket bucket : buckets.values())
+                bucket.build(childCount);
+        all.build(childCount);
+    }
+
+    // First unmatched node in breadth-first order with the same subtree hash.
+    public TreeNode findSameHash(TreeNode oldNode) {
+        HashBucket bucket = hashIndex.get(oldNode.hash);
+        if (bucket == null)
+            return null;
+        while (bucket.head < bucket.members.size() && !isCandidate(bucket.members.get(bucket.head)))
+            bucket.head++;
+        return bucket.head < bucket.members.size() ? nodes[bucket.members.get(bucket.head)] : null;
+    }
+
+    // Removes the node and all siblings with the same hash from the new tree.
+    public void prune(TreeNode newNode) {
+        TreeNode parent = newNode.getParent();
+        long hash = newNode.hash;
+        for (TreeNode sibling : parent.children) {
+            if (sibling.hash == hash)
+                detach(sibling);
+        }
+        parent.children.removeIf(node -> node.hash == hash);
+        int p = indexOf.get(parent);
+        childCount[p] = parent.children.size();
+        update(p);
+    }
+
+    // First unmatched node in breadth-first order for which checkSimilarity holds.
+    public TreeNode findSimilar(TreeNode oldNode) {
+        int oldChildren = oldNode.children.size();
+        String label = oldNode.getLabel();
+        String parentLabel = oldNode.getParent().getLabel();
+        int best = Integer.MAX_VALUE;
+
+        // Same label and parent label: similar unless both nodes are leaves.
+        Map<String, Bucket> byParent = pairIndex.get(label);
+        Bucket pair = byParent == null ? null : byParent.get(parentLabel);
+        if (pair != null)
+            best = Math.min(best, pair.firstAtLeast(oldChildren > 0 ? 0 : 1));
+        if (oldChildren > 0) {
+            // Same label or same parent label: similar if the new node has no more children.
+            Bucket sameLabel = labelIndex.get(label);
+            if (sameLabel != null)
+                best = Math.min(best, sameLabel.firstAtMost(oldChildren));
+            Bucket sameParent = parentIndex.get(parentLabel);
+            if (sameParent != null)
+                best = Math.min(best, sameParent.firstAtMost(oldChildren));
+            // Otherwise only leaves are similar.
+            best = Math.min(best, all.firstAtMost(0));
+        }
+        return best == Integer.MAX_VALUE ? null : nodes[best];
+    }
+
+    public void match(TreeNode oldNode, TreeNode newNode) {
+        newNode.setMatched(true);
+        oldNode.setMatched(true);
+        disable(indexOf.get(newNode));
+    }
+
+    public static boolean checkSimilarity(TreeNode oldNode, TreeNode newNode) {
+        double similarityCoefficient = 0.0;
+        double allChildren = oldNode.children.size() + newNode.children.size();
+
+        // Children are compared by identity, so the new children are always the different ones.
+        int differentChildren = newNode.children.size();
+
+        if (oldNode.getLabel().equals(newNode.getLabel())) similarityCoefficient += 0.25;
+        if (oldNode.getParent().getLabel().equals(newNode.getParent().getLabel()))
+            similarityCoefficient += 0.25;
+        similarityCoefficient += (1 - ((double) differentChildren / allChildren)) / 2;
+
+        return similarityCoefficient >= 0.5;
+    }
+
+    private boolean isCandidate(int i) {
+        return !detached[i] && !nodes[i].isMatched();
+    }
+
+    private void detach(TreeNode subtreeRoot) {
+        ArrayDeque<TreeNode> stack = new ArrayDeque<>();
+        stack.push(subtreeRoot);
+        while (!stack.isEmpty()) {
+            TreeNode node = stack.pop();
+            int i = indexOf.get(node);
+            if (detached[i])
+                continue;
+            detached[i] = true;
+            disable(i);
+            for (TreeNode child : node.children)
+                stack.push(child);
+        }
+    }
+
+    private void update(int i) {
+        if (allPos[i] < 0 || !isCandidate(i))
+            return;
+        labelOf[i].set(labelPos[i], childCount[i]);
+        parentOf[i].set(parentPos[i], childCount[i]);
+        pairOf[i].set(pairPos[i], childCount[i]);
+        all.set(allPos[i], childCount[i]);
+    }
+
+    private void disable(int i) {
+        if (allPos[i] < 0)
+            return;
+        labelOf[i].disable(labelPos[i]);
+        parentOf[i].disable(parentPos[i]);
+        pairOf[i].disable(pairPos[i]);
+        all.disable(allPos[i]);
+    }
+
+    private static class HashBucket {
+        List<Integer> members = new ArrayList<>();
+        int head;
+    }
+
+    // Nodes in breadth-first order with a min/max segment tree over their current child counts.
+    private static class Bucket {
+        private int[] members = new int[4];
+        private int count;
+        private int leaves;
+        private int[] min;
+        private int[] max;
+
+        int add(int index) {
+            if (count == members.length)
+                members = Arrays.copyOf(members, count * 2);
+            members[count] = index;
+            return count++;
+        }
+
+        void build(int[] childCount) {
+            leaves = 1;
+            while (leaves < count)
+                leaves <<= 1;
+            min = new int[2 * leaves];
+            max = new int[2 * leaves];
+            Arrays.fill(min, Integer.MAX_VALUE);
+            Arrays.fill(max, Integer.MIN_VALUE);
+            for (int pos = 0; pos < count; pos++) {
+                min[leaves + pos] = childCount[members[pos]];
+                max[leaves + pos] = childCount[members[pos]];
+            }
+            for (int node = leaves - 1; node > 0; node--)
+                pull(node);
+        }
+
+        void set(int pos, int value) {
+            int node = leaves + pos;
+            min[node] = value;
+            max[node] = value;
+            for (node >>= 1; node > 0; node >>= 1)
+                pull(node);
+        }
+
+        void disable(int pos) {
+            int node = leaves + pos;
+            min[node] = Integer.MAX_VALUE;
+            max[node] = Integer.MIN_VALUE;
+            for (node >>= 1; node > 0; node >>= 1)
+                pull(node);
+        }
+
+        int firstAtMost(int value) {
+            if (count == 0 || min[1] > value)
+                return Integer.MAX_VALUE;
+            int node = 1;
+            while (node < leaves)
+                node = min[2 * node] <= value ? 2 * node : 2 * node + 1;
+            return members[node - leaves];
+        }
+
+        int firstAtLeast(int value) {
+            if (count == 0 || max[1] < value)
+                return Integer.MAX_VALUE;
+            int node = 1;
+            while (node < leaves)
+                node = max[2 * node] >= value ? 2 * node : 2 * node + 1;
+            return members[node - leaves];
+        }
+
+        private void pull(int node) {
+            min[node] = Math.min(min[2 * node], min[2 * node + 1]);
+            max[node] = Math.max(max[2 * node], max[2 * node + 1]);
+        }
+    }
+}
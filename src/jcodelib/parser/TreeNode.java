@@ -10,6 +10,8 @@ import java.util.List;
 public class TreeNode {
     public static final String DELIM = "|#|";
     public static final String ROOT = "root";
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
 
     private ASTNode astNode;
     private String label;
@@ -17,7 +19,7 @@ public class TreeNode {
     public List<TreeNode> children;
     private int lineNumber;
 
-    public String hash;
+    public long hash;
     private boolean matched;
 
     public TreeNode() {
@@ -97,6 +99,38 @@ public class TreeNode {
         child.setParent(this);
     }
 
+    public void computeHash() {
+        // Merkle hash: label first, then the already computed hashes of the children in order.
+        long h = FNV_OFFSET;
+        for (int i = 0; i < label.length(); i++) {
+            h ^= label.charAt(i);
+            h *= FNV_PRIME;
+        }
+        for (TreeNode child : children) {
+            h = mix(h * FNV_PRIME + child.hash);
+        }
+        hash = mix(h ^ children.size());
+    }
+
+    public String getHashString() {
+        // debug view only, matching compares the primitive hash
+        String hex = Long.toHexString(hash);
+        StringBuilder sb = new StringBuilder(16);
+        for (int i = hex.length(); i < 16; i++) {
+            sb.append('0');
+        }
+        return sb.append(hex).toString();
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
     @Override
     public String toString() {
         return label + "(" + lineNumber + ")";
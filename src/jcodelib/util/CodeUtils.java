@@ -2,105 +2,162 @@ package jcodelib.util;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.jdt.core.JavaCore;
-import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.ToolFactory;
+import org.eclipse.jdt.core.compiler.IScanner;
+import org.eclipse.jdt.core.compiler.ITerminalSymbols;
+import org.eclipse.jdt.core.compiler.InvalidInputException;
 import org.eclipse.jdt.core.dom.ASTNode;
-import org.eclipse.jdt.core.dom.ASTParser;
-import org.eclipse.jdt.core.dom.Comment;
 import org.eclipse.jdt.core.dom.CompilationUnit;
 
 import file.FileIOManager;
 import jcodelib.element.Hunk;
 import jcodelib.element.Line;
 import jcodelib.element.NormalizedHunk;
+import jcodelib.parser.ParseService;
 
 public class CodeUtils {
 
+	//Simple class names of JDT node types, indexed by node type.
+	private static final String[] typeNames = createTypeNames();
+
 	public static CompilationUnit getCompilationUnit(String unitName, String[] classPath, String[] sourcePath, String source){
-		ASTParser parser = ASTParser.newParser(AST.JLS8);
-		parser.setKind(ASTParser.K_COMPILATION_UNIT);
-		Map options = JavaCore.getOptions();
-		JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
-		parser.setCompilerOptions(options);
-		parser.setEnvironment(classPath, sourcePath, null, true);
-		parser.setUnitName(unitName);
-		parser.setResolveBindings(true);
-		parser.setSource(source.toCharArray());
-		CompilationUnit cu = (CompilationUnit)parser.createAST(null);
+		return ParseService.parse(source.toCharArray(), ParseService.JAVA_8, unitName, classPath, sourcePath);
+	}
 
-		return cu;
+	//Resolves all files in one environment, see ParseService.parseAll.
+	public static void getCompilationUnits(String[] sourceFiles, String[] classPath, String[] sourcePath, ParseService.UnitHandler handler){
+		ParseService.parseAll(sourceFiles, ParseService.JAVA_8, classPath, sourcePath, null, handler);
 	}
 
 	public static CompilationUnit getCompilationUnit(String source) {
-		ASTParser parser = ASTParser.newParser(AST.JLS8);
-		parser.setKind(ASTParser.K_COMPILATION_UNIT);
-		Map options = JavaCore.getOptions();
-		JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
-		parser.setCompilerOptions(options);
-		parser.setSource(source.toCharArray());
-		CompilationUnit cu = (CompilationUnit)parser.createAST(null);
-
-		return cu;
+		return ParseService.parse(source.toCharArray(), ParseService.JAVA_8);
 	}
 
 	public static String getTypeName(int type){
-		return type == -1 ? "root" : ASTNode.nodeClassForType(type).getSimpleName();
+		if(type == -1)
+			return "root";
+		if(type > 0 && type < typeNames.length && typeNames[type] != null)
+			return typeNames[type];
+		return ASTNode.nodeClassForType(type).getSimpleName();
 	}
 
-	public static Set<Integer> getCommentLineNumbers(File javaFile){
-		Set<Integer> commentLines = new HashSet<>();
-		int startLine = 0;
-		int endLine = 0;
-		String[] lines = null;
-		try {
-			String source = FileIOManager.getContent(javaFile);
-			lines = source.split("\\n|\\r\\n|\\r");
-			CompilationUnit cu = getCompilationUnit(source);
-			List<Comment> comments = cu.getCommentList();
-			for(Comment comment : comments){
-				//For block comments or Javadocs, all lines should be in comments.
-				if (comment.getNodeType() == ASTNode.BLOCK_COMMENT
-						|| comment.getNodeType() == ASTNode.JAVADOC) {
-					startLine = cu.getLineNumber(comment.getStartPosition());
-					endLine = cu.getLineNumber(comment.getStartPosition()
-							+ comment.getLength());
-					//For block comment, check whether the first line has only the comment.
-					if ((comment.getNodeType() == ASTNode.BLOCK_COMMENT && lines[startLine-1].trim().startsWith("/*"))
-							|| comment.getNodeType() == ASTNode.JAVADOC) {
-						commentLines.add(startLine);
-					}
-					for (int i = startLine + 1; i <= endLine; i++) {
-						commentLines.add(i);
-					}
-				}else if(comment.getNodeType() == ASTNode.LINE_COMMENT){
-					//For line comment, check whether that line starts with '//'
-					startLine = cu.getLineNumber(comment.getStartPosition());
-					if(lines[startLine-1].trim().startsWith("//")){
-						commentLines.add(startLine);
-					}
-				}
+	private static String[] createTypeNames() {
+		List<String> names = new ArrayList<>();
+		names.add(null);
+		for(int type = 1; ; type++) {
+			try {
+				names.add(ASTNode.nodeClassForType(type).getSimpleName());
+			} catch (IllegalArgumentException e) {
+				break;
 			}
+		}
+		return names.toArray(new String[names.size()]);
+	}
 
+	public static Set<Integer> getCommentLineNumbers(File javaFile){
+		return toSet(getCommentLines(javaFile));
+	}
+
+	public static Set<Integer> getCommentLineNumbers(String source){
+		return toSet(getCommentLines(source));
+	}
+
+	public static BitSet getCommentLines(File javaFile){
+		try {
+			return getCommentLines(FileIOManager.getContent(javaFile));
 		} catch (Exception e) {
 			e.printStackTrace();
 			System.out.println("File:"+javaFile.getAbsolutePath());
-			System.out.println("Line:"+startLine);
-			System.out.println("Total Line:"+lines.length);
+		}
+
+		return new BitSet();
+	}
+
+	/*
+	 * Lines that only hold comments, found in one pass of the JDT scanner instead of a full parse.
+	 * Lines of block comments and Javadocs count after the first one, which counts if it starts with the comment.
+	 * A line comment counts if its line starts with it.
+	 */
+	public static BitSet getCommentLines(String source){
+		BitSet commentLines = new BitSet();
+		char[] chars = source.toCharArray();
+		LineIndex lineIndex = new LineIndex(chars);
+		IScanner scanner = ToolFactory.createScanner(true, false, false, JavaCore.VERSION_1_8, JavaCore.VERSION_1_8);
+		scanner.setSource(chars);
+		int token = 0;
+		while(token != ITerminalSymbols.TokenNameEOF){
+			int position = scanner.getCurrentTokenEndPosition();
+			try {
+				token = scanner.getNextToken();
+			} catch (InvalidInputException e) {
+				//The scanner has moved past the bad token, e.g. an invalid escape, keep scanning unless it is stuck.
+				if(scanner.getCurrentTokenEndPosition() <= position)
+					break;
+				continue;
+			}
+			if(token == ITerminalSymbols.TokenNameCOMMENT_BLOCK
+					|| token == ITerminalSymbols.TokenNameCOMMENT_JAVADOC){
+				int startLine = lineIndex.getLineNumber(scanner.getCurrentTokenStartPosition());
+				int endLine = lineIndex.getLineNumber(scanner.getCurrentTokenEndPosition() + 1);
+				//For block comment, check whether the first line has only the comment.
+				if(token == ITerminalSymbols.TokenNameCOMMENT_JAVADOC
+						|| lineStartsWith(chars, lineIndex, startLine, '*')){
+					commentLines.set(startLine);
+				}
+				if(endLine > startLine)
+					commentLines.set(startLine + 1, endLine + 1);
+			}else if(token == ITerminalSymbols.TokenNameCOMMENT_LINE){
+				//For line comment, check whether that line starts with '//'
+				int startLine = lineIndex.getLineNumber(scanner.getCurrentTokenStartPosition());
+				if(lineStartsWith(chars, lineIndex, startLine, '/')){
+					commentLines.set(startLine);
+				}
+			}
 		}
 
 		return commentLines;
 	}
 
+	//Whether the trimmed line starts with '/' followed by the given character.
+	private static boolean lineStartsWith(char[] chars, LineIndex lineIndex, int lineNum, char second) {
+		int pos = lineIndex.getLineStart(lineNum);
+		while(pos < chars.length && chars[pos] <= ' ' && chars[pos] != '\n' && chars[pos] != '\r')
+			pos++;
+		return pos + 1 < chars.length && chars[pos] == '/' && chars[pos + 1] == second;
+	}
+
+	private static Set<Integer> toSet(BitSet lines) {
+		Set<Integer> set = new HashSet<>();
+		for(int line = lines.nextSetBit(0); line >= 0; line = lines.nextSetBit(line + 1)){
+			set.add(line);
+		}
+		return set;
+	}
+
+	private static BitSet toBitSet(Set<Integer> lines) {
+		BitSet bits = new BitSet();
+		for(int line : lines){
+			if(line >= 0)
+				bits.set(line);
+		}
+		return bits;
+	}
+
 	public static List<Line> stripComments(String[] codeLines, Set<Integer> commentLineNumbers) {
+		return stripComments(codeLines, toBitSet(commentLineNumbers));
+	}
+
+	public static List<Line> stripComments(String[] codeLines, BitSet commentLines) {
 		List<Line> lines = new ArrayList<>();
 		for (int lineNum = 1; lineNum <= codeLines.length; lineNum++) {
 			//if there exists a non-comment line, add a graft for the line.
-			if (!commentLineNumbers.contains(lineNum)){
+			if (!commentLines.get(lineNum)){
 				if(codeLines[lineNum-1].trim().length() > 0){
 					Line line = new Line(lineNum, codeLines[lineNum-1].trim());
 					lines.add(line);
@@ -120,15 +177,19 @@ public class CodeUtils {
 	}
 
 	public static NormalizedHunk stripComments(Hunk hunk, Set<Integer> oldCommentLineNumbers, Set<Integer> newCommentLineNumbers) {
+		return stripComments(hunk, toBitSet(oldCommentLineNumbers), toBitSet(newCommentLineNumbers));
+	}
+
+	public static NormalizedHunk stripComments(Hunk hunk, BitSet oldCommentLines, BitSet newCommentLines) {
 		NormalizedHunk newHunk = new NormalizedHunk(hunk);
 		if(hunk.type.equals("a")
 				|| hunk.type.equals("c")) {
-			String[] addedLines = hunk.addedCode.split("\n", hunk.newEndLine-hunk.newStartLine+1);
 			for (int lineNum = hunk.newStartLine; lineNum <= hunk.newEndLine; lineNum++) {
 				//if there exists a non-comment line, add a graft for the line.
-				if (!newCommentLineNumbers.contains(lineNum)){
-					if(addedLines[lineNum-hunk.newStartLine].trim().length() > 0){
-						Line line = new Line(lineNum, addedLines[lineNum-hunk.newStartLine].trim());
+				if (!newCommentLines.get(lineNum)){
+					String code = hunk.addedLines.getLine(lineNum-hunk.newStartLine).trim();
+					if(code.length() > 0){
+						Line line = new Line(lineNum, code);
 						newHunk.insertedLines.add(line);
 					}
 				}
@@ -146,12 +207,12 @@ public class CodeUtils {
 
 		if(hunk.type.equals("d")
 				|| hunk.type.equals("c")) {
-			String[] deletedLines = hunk.deletedCode.split("\n", hunk.endLine-hunk.startLine+1);
 			for (int lineNum = hunk.startLine; lineNum <= hunk.endLine; lineNum++) {
 				//if there exists a non-comment line, add a graft for the line.
-				if (!oldCommentLineNumbers.contains(lineNum)){
-					if(deletedLines[lineNum-hunk.startLine].trim().length() > 0){
-						Line line = new Line(lineNum, deletedLines[lineNum-hunk.startLine].trim());
+				if (!oldCommentLines.get(lineNum)){
+					String code = hunk.deletedLines.getLine(lineNum-hunk.startLine).trim();
+					if(code.length() > 0){
+						Line line = new Line(lineNum, code);
 						newHunk.deletedLines.add(line);
 					}
 				}
@@ -171,11 +232,11 @@ public class CodeUtils {
 	}
 
 	public static NormalizedHunk normalizeHunk(Hunk hunk, Set<Integer> oldCommentLineNumbers, Set<Integer> newCommentLineNumbers){
-		NormalizedHunk newHunk = CodeUtils.stripComments(hunk, oldCommentLineNumbers, newCommentLineNumbers);
-		newHunk.insertedLines = normalizeLines(newHunk.insertedLines);
-		newHunk.deletedLines = normalizeLines(newHunk.deletedLines);
+		return normalizeHunk(hunk, toBitSet(oldCommentLineNumbers), toBitSet(newCommentLineNumbers));
+	}
 
-		return newHunk;
+	public static NormalizedHunk normalizeHunk(Hunk hunk, BitSet oldCommentLines, BitSet newCommentLines){
+		return new HunkNormalizer().normalize(hunk, oldCommentLines, newCommentLines);
 	}
 
 	public static NormalizedHunk normalizeHunk(NormalizedHunk hunk){
@@ -198,28 +259,8 @@ public class CodeUtils {
 	}
 
 	public static Line normalizeLine(Line line) {
-		String[] tokens = line.code.split("(?!\\\\)\\\"");
-		StringBuffer sb = new StringBuffer();
-		for(int i=0; i<tokens.length; i++){
-			if(i%2==0){
-				String token = tokens[i];
-				token = token.replaceAll("[{};]", "");
-				token = token.replaceAll("([\\[\\]\\(\\)\\|\\+\\*&%\\^\\$\\#\\@\\-\\:\\,\\/\\=]+)([\\s]+)", "$1");
-				token = token.replaceAll("([\\s]+)([\\[\\]\\(\\)\\|\\+\\*\\&\\%\\^\\$\\#\\@\\-\\,\\:\\/\\=]+)", "$2");
-				sb.append("\"");
-				sb.append(token);
-			}else{
-				sb.append("\"");
-				sb.append(tokens[i]);
-			}
-		}
-
-		Line normalized = new Line(line.lineNum, sb.toString().substring(1).trim());
-		if(normalized.code.length() > 0){
-			return normalized;
-		}else{
-			return null;
-		}
+		String code = new HunkNormalizer().normalize(line.code, 0, line.code.length());
+		return code == null ? null : new Line(line.lineNum, code);
 	}
 
 }
@@ -3,19 +3,19 @@ package jcodelib.util;
 import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
-import org.eclipse.jdt.core.compiler.CharOperation;
 import org.eclipse.jdt.core.compiler.IProblem;
 import org.eclipse.jdt.core.dom.CompilationUnit;
-import org.eclipse.jdt.internal.compiler.ClassFile;
 
 import file.FileIOManager;
-import jcodelib.compiler.CompilationUnitImpl;
 import jcodelib.compiler.Compiler;
 import jcodelib.compiler.CustomClassLoader;
+import jcodelib.coverage.CoverageRuntime;
 
 public class CompileUtils {
 
@@ -31,26 +31,29 @@ public class CompileUtils {
 		return sb.toString();
 	}
 
-	public static void compile(String fileName, String javaVersion, String[] classPath, String[] sourcePath) throws Exception {
-		List<String> classes = new ArrayList<>();
+	/*
+	 * Compiles the file without touching the disk and returns a loader for its classes (including inner classes).
+	 * Class bytes stay in memory, each class is only defined (and instrumented) when it is first loaded.
+	 */
+	public static CustomClassLoader compile(String fileName, String javaVersion, String[] classPath, String[] sourcePath) throws Exception {
+		return compile(fileName, javaVersion, classPath, sourcePath, null);
+	}
+
+	//Same as above, with classes instrumented for the given runtime when a coverage runtime is passed.
+	public static CustomClassLoader compile(String fileName, String javaVersion, String[] classPath, String[] sourcePath,
+			CoverageRuntime coverage) throws Exception {
 		File file = new File(fileName);
 		String source = FileIOManager.getContent(file);
 		CompilationUnit cu = CodeUtils.getCompilationUnit(file.getName(), classPath, sourcePath, source);
 		Compiler compiler = new Compiler();
-		String classPathEntries = getPathEntryString(classPath);
-		URL[] urls = getUrls(classPathEntries);
-		CustomClassLoader loader = new CustomClassLoader(urls, compiler.getClass()
-				.getClassLoader(), compiler.classes);
-		CompilationUnitImpl cui = new CompilationUnitImpl(cu);
-		String className = CharOperation.toString(cui.getPackageName())
-				+ "." + new String(cui.getMainTypeName());
-		File tmpDir = new File("tmp");
-		if(!tmpDir.exists()){
-			tmpDir.mkdir();
+		URL[] urls = getUrls(getPathEntryString(classPath));
+		URLClassLoader classPathLoader = new URLClassLoader(urls, compiler.getClass().getClassLoader());
+		boolean error;
+		try {
+			error = compiler.compile(classPathLoader, source, cu, null, false, javaVersion);
+		} finally {
+			classPathLoader.close();
 		}
-		String path = tmpDir.getAbsolutePath()+File.separator;
-		boolean error = compiler.compile(loader, source,
-				cu, path, true, javaVersion);
 		if(error){
 			for(IProblem problem : compiler.problems){
 				if (problem.isError()) {
@@ -62,24 +65,36 @@ public class CompileUtils {
 				}
 			}
 			throw new Exception("Compile Error");
-		}else{
-			//Add tmp to class path.
-			List<URL> urlList = new ArrayList<URL>();
-			urlList.addAll(Arrays.asList(urls));
-			urlList.add(tmpDir.toURI().toURL());
-			urls = new URL[urlList.size()];
-			urlList.toArray(urls);
+		}
 
-			loader = new CustomClassLoader(urls, compiler.getClass()
-					.getClassLoader(), compiler.classes);
+		CustomClassLoader loader = new CustomClassLoader(urls, compiler.getClass()
+				.getClassLoader(), compiler.classes, coverage);
+		return loader;
+	}
 
-			//Get all classes (including inner classes)
-			for(ClassFile cf : compiler.classes){
-				className = CharOperation.toString(cf.getCompoundName());
-				classes.add(className);
-				loader.loadClass(className);
+	//Compiles all files in one compiler invocation per thread, see Compiler.compileAll.
+	public static Compiler compileAll(String[] fileNames, String javaVersion, String[] classPath, int threads) throws Exception {
+		Map<String, String> sources = new LinkedHashMap<>();
+		for(String fileName : fileNames){
+			sources.put(fileName, FileIOManager.getContent(new File(fileName)));
+		}
+		Compiler compiler = new Compiler();
+		URLClassLoader loader = new URLClassLoader(getUrls(getPathEntryString(classPath)), compiler.getClass().getClassLoader());
+		try {
+			if(compiler.compileAll(loader, sources, javaVersion, threads)){
+				for(Map.Entry<String, List<IProblem>> unit : compiler.unitProblems.entrySet()){
+					for(IProblem problem : unit.getValue()){
+						if (problem.isError()) {
+							System.out.println(unit.getKey() + " " + problem.getMessage() + " line:" + problem.getSourceLineNumber());
+						}
+					}
+				}
+				throw new Exception("Compile Error");
 			}
+		} finally {
+			loader.close();
 		}
+		return compiler;
 	}
 
 	private static URL[] getUrls(String classPathEntries) throws MalformedURLException {
@@ -0,0 +1,178 @@
+package jcodelib.util;
+
+import java.util.Arrays;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+
+/*
+ * Immutable interval index over the source ranges of AST nodes, [start, end) with end exclusive.
+ * Entities are sorted by start, longer ranges and then earlier added ones first, so of all entities containing
+ * a range the innermost one comes last. Each entity also stores the max end of the implicit balanced tree
+ * below it, which lets queries skip whole subtrees: both queries run in O(log n + k) for k reported entities.
+ */
+public class EntityIndex {
+
+	private int[] starts;
+	private int[] ends;
+	private int[] types;
+	private int[] maxEnds;
+
+	private EntityIndex(int[] starts, int[] ends, int[] types) {
+		this.starts = starts;
+		this.ends = ends;
+		this.types = types;
+		this.maxEnds = new int[starts.length];
+		buildMaxEnds(0, starts.length);
+	}
+
+	//Index of every node under the root, typed by ASTNode.getNodeType.
+	public static EntityIndex of(ASTNode root) {
+		Builder builder = new Builder();
+		root.accept(new ASTVisitor(true) {
+			@Override
+			public void preVisit(ASTNode node) {
+				builder.add(node.getStartPosition(), node.getStartPosition() + node.getLength(), node.getNodeType());
+			}
+		});
+		return builder.build();
+	}
+
+	private int buildMaxEnds(int lo, int hi) {
+		if(lo >= hi)
+			return Integer.MIN_VALUE;
+		int mid = (lo + hi) >>> 1;
+		maxEnds[mid] = Math.max(ends[mid], Math.max(buildMaxEnds(lo, mid), buildMaxEnds(mid + 1, hi)));
+		return maxEnds[mid];
+	}
+
+	public int size() {
+		return starts.length;
+	}
+
+	public int getStart(int entity) {
+		return starts[entity];
+	}
+
+	public int getEnd(int entity) {
+		return ends[entity];
+	}
+
+	public int getType(int entity) {
+		return types[entity];
+	}
+
+	public String getTypeName(int entity) {
+		return CodeUtils.getTypeName(types[entity]);
+	}
+
+	//Innermost entity containing [start, end], -1 if there is none.
+	public int findEnclosing(int start, int end) {
+		return findEnclosing(0, starts.length, start, end);
+	}
+
+	private int findEnclosing(int lo, int hi, int start, int end) {
+		while(lo < hi){
+			int mid = (lo + hi) >>> 1;
+			if(maxEnds[mid] < end)
+				return -1;
+			if(starts[mid] > start){
+				hi = mid;
+				continue;
+			}
+			//Entities on the right start after mid, so any match there is more inner than one on the left.
+			int right = findEnclosing(mid + 1, hi, start, end);
+			if(right >= 0)
+				return right;
+			if(ends[mid] >= end)
+				return mid;
+			hi = mid;
+		}
+		return -1;
+	}
+
+	//Entities overlapping [start, end), in index order.
+	public int[] findOverlapping(int start, int end) {
+		IntList result = new IntList();
+		findOverlapping(0, starts.length, start, end, result);
+		return result.toArray();
+	}
+
+	//Entities overlapping the 1-based, inclusive line range.
+	public int[] findOverlappingLines(LineIndex lines, int startLine, int endLine) {
+		if(startLine < 1)
+			startLine = 1;
+		if(endLine > lines.getLineCount())
+			endLine = lines.getLineCount();
+		if(startLine > endLine)
+			return new int[0];
+		int end = endLine < lines.getLineCount() ? lines.getLineStart(endLine + 1) : lines.getLength();
+		return findOverlapping(lines.getLineStart(startLine), end);
+	}
+
+	private void findOverlapping(int lo, int hi, int start, int end, IntList result) {
+		if(lo >= hi)
+			return;
+		int mid = (lo + hi) >>> 1;
+		if(maxEnds[mid] <= start)
+			return;
+		findOverlapping(lo, mid, start, end, result);
+		if(starts[mid] >= end)
+			return;
+		if(ends[mid] > start)
+			result.add(mid);
+		findOverlapping(mid + 1, hi, start, end, result);
+	}
+
+	public static class Builder {
+		private IntList starts = new IntList();
+		private IntList ends = new IntList();
+		private IntList types = new IntList();
+
+		public Builder add(int start, int end, int type) {
+			starts.add(start);
+			ends.add(end);
+			types.add(type);
+			return this;
+		}
+
+		public EntityIndex build() {
+			int size = starts.size;
+			Integer[] order = new Integer[size];
+			for(int i = 0; i < size; i++){
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> {
+				if(starts.values[a] != starts.values[b])
+					return Integer.compare(starts.values[a], starts.values[b]);
+				if(ends.values[a] != ends.values[b])
+					return Integer.compare(ends.values[b], ends.values[a]);
+				return Integer.compare(a, b);
+			});
+			int[] sortedStarts = new int[size];
+			int[] sortedEnds = new int[size];
+			int[] sortedTypes = new int[size];
+			for(int i = 0; i < size; i++){
+				sortedStarts[i] = starts.values[order[i]];
+				sortedEnds[i] = ends.values[order[i]];
+				sortedTypes[i] = types.values[order[i]];
+			}
+			return new EntityIndex(sortedStarts, sortedEnds, sortedTypes);
+		}
+	}
+
+	private static class IntList {
+		int[] values = new int[16];
+		int size;
+
+		void add(int value) {
+			if(size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+			values[size++] = value;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+}
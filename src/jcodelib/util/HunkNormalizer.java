@@ -0,0 +1,133 @@
+package jcodelib.util;
+
+import java.util.BitSet;
+import java.util.List;
+
+import jcodelib.element.Hunk;
+import jcodelib.element.Line;
+import jcodelib.element.LineSlices;
+import jcodelib.element.NormalizedHunk;
+
+/*
+ * Single pass version of CodeUtils.stripComments followed by CodeUtils.normalizeLines.
+ * Each line is read once from the hunk's text: comments are cut off, and outside string literals braces and
+ * semicolons are dropped along with whitespace next to operators, writing into one reusable buffer.
+ * Not thread-safe, use one instance per thread.
+ */
+public class HunkNormalizer {
+
+	private StringBuilder buffer = new StringBuilder();
+
+	public NormalizedHunk normalize(Hunk hunk, BitSet oldCommentLines, BitSet newCommentLines) {
+		NormalizedHunk newHunk = new NormalizedHunk(hunk);
+		if(hunk.type.equals("a") || hunk.type.equals("c"))
+			addLines(newHunk.insertedLines, hunk.addedLines, hunk.newStartLine, hunk.newEndLine, newCommentLines);
+		if(hunk.type.equals("d") || hunk.type.equals("c"))
+			addLines(newHunk.deletedLines, hunk.deletedLines, hunk.startLine, hunk.endLine, oldCommentLines);
+		return newHunk;
+	}
+
+	private void addLines(List<Line> lines, LineSlices slices, int startLine, int endLine, BitSet commentLines) {
+		CharSequence text = slices.getText();
+		for(int lineNum = startLine; lineNum <= endLine; lineNum++){
+			if(commentLines.get(lineNum))
+				continue;
+			int index = lineNum - startLine;
+			int start = slices.getStart(index);
+			int end = slices.getEnd(index);
+			while(start < end && text.charAt(start) <= ' ')
+				start++;
+			while(end > start && text.charAt(end - 1) <= ' ')
+				end--;
+			if(start == end)
+				continue;
+			String code = normalize(text, start, cutComment(text, start, end));
+			if(code != null)
+				lines.add(new Line(lineNum, code));
+		}
+	}
+
+	//End of the code before the first block comment, or else the first line comment.
+	private static int cutComment(CharSequence text, int start, int end) {
+		int lineComment = -1;
+		for(int i = start; i + 1 < end; i++){
+			if(text.charAt(i) == '/'){
+				char next = text.charAt(i + 1);
+				if(next == '*')
+					return i;
+				if(next == '/' && lineComment < 0)
+					lineComment = i;
+			}
+		}
+		return lineComment < 0 ? end : lineComment;
+	}
+
+	/*
+	 * Same result as CodeUtils.normalizeLine on text[start, end), null if nothing is left.
+	 * Quotes after the last other character are dropped, as String.split drops trailing empty tokens.
+	 */
+	public String normalize(CharSequence text, int start, int end) {
+		int last = end;
+		while(last > start && text.charAt(last - 1) == '"')
+			last--;
+		buffer.setLength(0);
+		boolean inString = false;
+		int tokenStart = 0;
+		int spaceStart = -1;
+		for(int i = start; i < last; i++){
+			char c = text.charAt(i);
+			if(c == '"'){
+				endSpace(spaceStart, tokenStart, false);
+				spaceStart = -1;
+				inString = !inString;
+				buffer.append(c);
+				tokenStart = buffer.length();
+			}else if(inString){
+				buffer.append(c);
+			}else if(c == '{' || c == '}' || c == ';'){
+				continue;
+			}else if(isSpace(c)){
+				if(spaceStart < 0)
+					spaceStart = buffer.length();
+				buffer.append(c);
+			}else{
+				if(spaceStart >= 0)
+					endSpace(spaceStart, tokenStart, isOperator(c));
+				spaceStart = -1;
+				buffer.append(c);
+			}
+		}
+		if(!inString)
+			endSpace(spaceStart, tokenStart, false);
+
+		int from = 0;
+		int to = buffer.length();
+		while(from < to && buffer.charAt(from) <= ' ')
+			from++;
+		while(to > from && buffer.charAt(to - 1) <= ' ')
+			to--;
+		return from < to ? buffer.substring(from, to) : null;
+	}
+
+	//Drop a whitespace run that follows or precedes an operator within the same token.
+	private void endSpace(int spaceStart, int tokenStart, boolean beforeOperator) {
+		if(spaceStart < 0)
+			return;
+		if(beforeOperator || (spaceStart > tokenStart && isOperator(buffer.charAt(spaceStart - 1))))
+			buffer.setLength(spaceStart);
+	}
+
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	private static boolean isOperator(char c) {
+		switch(c){
+		case '[': case ']': case '(': case ')': case '|': case '+': case '*': case '&': case '%':
+		case '^': case '$': case '#': case '@': case '-': case ':': case ',': case '/': case '=':
+			return true;
+		default:
+			return false;
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package jcodelib.util;
+
+import java.util.Arrays;
+
+/*
+ * Line start offsets of a source, answering the same queries as CompilationUnit.getLineNumber
+ * without keeping an AST around. \n, \r and \r\n are line separators, as in the JDT scanner.
+ */
+public class LineIndex {
+
+	private final int[] lineStarts;
+	private final int length;
+
+	public LineIndex(String source) {
+		this(source.toCharArray());
+	}
+
+	public LineIndex(char[] source) {
+		int[] starts = new int[16];
+		int count = 1;
+		for(int i = 0; i < source.length; i++) {
+			char c = source[i];
+			if(c == '\r' && i + 1 < source.length && source[i + 1] == '\n')
+				i++;
+			if(c == '\r' || c == '\n') {
+				if(count == starts.length)
+					starts = Arrays.copyOf(starts, count * 2);
+				starts[count++] = i + 1;
+			}
+		}
+		this.lineStarts = Arrays.copyOf(starts, count);
+		this.length = source.length;
+	}
+
+	//1-based line number of the position, -1 if the position is outside of the source.
+	public int getLineNumber(int position) {
+		if(position < 0 || position >= length)
+			return -1;
+		int index = Arrays.binarySearch(lineStarts, position);
+		return index >= 0 ? index + 1 : -index - 1;
+	}
+
+	public int getLineStart(int lineNumber) {
+		return lineStarts[lineNumber - 1];
+	}
+
+	public int getLineCount() {
+		return lineStarts.length;
+	}
+
+	public int getLength() {
+		return length;
+	}
+}
@@ -0,0 +1,34 @@
+package main;
+
+import jcodelib.diffutil.BatchDiff;
+import jcodelib.diffutil.DiffCache;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+public class BatchMain {
+
+    // usage: BatchMain [changesDir] [outputFile] [threads] [engines, e.g. gumtree,las,jcode] [cacheDir] [cacheMB]
+    public static void main(String[] args) throws Exception {
+        File changesDir = new File(args.length > 0 ? args[0] : "resources/changes");
+        File outputFile = new File(args.length > 1 ? args[1] : "batch-results.txt");
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        List<String> engines = args.length > 3 ? Arrays.asList(args[3].split(",")) : BatchDiff.ALL_ENGINES;
+
+        BatchDiff batchDiff = new BatchDiff(threads, engines);
+        if (args.length > 4) {
+            long cacheBytes = (args.length > 5 ? Long.parseLong(args[5]) : 512) * 1024 * 1024;
+            batchDiff.setCache(new DiffCache(new File(args[4]), cacheBytes));
+        }
+
+        List<BatchDiff.DiffPair> pairs = BatchDiff.getChangePairs(changesDir);
+        System.out.println("Diffing " + pairs.size() + " pairs with " + engines + " on " + threads + " threads");
+        BatchDiff.BatchStats stats = batchDiff.run(pairs, outputFile);
+        System.out.println(stats);
+        if (batchDiff.getCache() != null) {
+            DiffCache cache = batchDiff.getCache();
+            System.out.println("Cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses, " + cache.getSize() + " bytes");
+        }
+    }
+}
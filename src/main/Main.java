@@ -40,6 +40,7 @@ public class Main {
         JavaCodeVisitor javaCodeVisitor = new JavaCodeVisitor(rootOld);
 
         javaCodeVisitor.traversePreOrder(rootNew);
+        javaCodeVisitor.getResults().forEach((cdChange, treeNodes) -> System.out.println(cdChange));
         List<GTAction> actions = getGumTreeResultForChange(changeNr);
         System.out.println("--------- GUMTREE RESULTS BELOW ---------");
         System.out.println(actions);
@@ -130,7 +131,7 @@ class MyComparator {
     private boolean compNode(TreeNode a, TreeNode b) {
         //  System.out.println("Comparing \"" + a.getLabel() + " (" + a.children.size() + ")\" with \"" + b.getLabel() + " (" + b.children.size() + ")\"");
         //  return a.getLabel().equals(b.getLabel()) && a.children.size() == b.children.size();
-        System.out.println(a.hash + " | " + b.hash);
+        System.out.println(a.getHashString() + " | " + b.getHashString());
         return a.getASTNode().toString().equals(b.getASTNode().toString());
     }
 
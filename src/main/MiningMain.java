@@ -0,0 +1,31 @@
+package main;
+
+import file.FileIOManager;
+import jcodelib.diffutil.DiffSession;
+import jcodelib.jgit.MiningPipeline;
+import jcodelib.jgit.ReposHandler;
+import org.eclipse.jgit.api.Git;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.List;
+
+public class MiningMain {
+
+    // usage: MiningMain [reposDir] [outputFile] [threads]
+    public static void main(String[] args) throws Exception {
+        File reposDir = new File(args.length > 0 ? args[0] : ".");
+        File outputFile = new File(args.length > 1 ? args[1] : "mining-results.txt");
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        PrintWriter pw = FileIOManager.getPrintWriter(outputFile);
+        try (Git git = Git.open(reposDir)) {
+            List<String> commitIds = ReposHandler.getAllCommitIds(git);
+            System.out.println("Mining " + commitIds.size() + " commits on " + threads + " threads");
+            MiningPipeline pipeline = new MiningPipeline(git.getRepository(), DiffSession.getDefault(), threads);
+            System.out.println(pipeline.run(commitIds, pw));
+        } finally {
+            pw.close();
+        }
+    }
+}